@@ -13,7 +13,10 @@ import de.rub.nds.tlscrawler.config.ControllerCommandConfig;
 import de.rub.nds.tlscrawler.config.WorkerCommandConfig;
 import de.rub.nds.tlscrawler.core.Controller;
 import de.rub.nds.tlscrawler.core.Worker;
+import de.rub.nds.tlscrawler.orchestration.IOrchestrationProvider;
+import de.rub.nds.tlscrawler.orchestration.LocalOrchestrationProvider;
 import de.rub.nds.tlscrawler.orchestration.RabbitMqOrchestrationProvider;
+import de.rub.nds.tlscrawler.persistence.IPersistenceProvider;
 import de.rub.nds.tlscrawler.persistence.MongoPersistenceProvider;
 
 /** TLS-Crawler's main class. */
@@ -44,16 +47,34 @@ public class Main {
                                 new MongoPersistenceProvider(
                                         workerCommandConfig.getMongoDbDelegate()));
                 worker.start();
+                // drain on SIGTERM, e.g. during rolling deployments
+                long drainGracePeriod = workerCommandConfig.getDrainGracePeriod();
+                Runtime.getRuntime()
+                        .addShutdownHook(
+                                new Thread(() -> worker.drain(drainGracePeriod), "worker-drain"));
                 break;
             case "controller":
                 controllerCommandConfig.validate();
+                IPersistenceProvider persistenceProvider =
+                        new MongoPersistenceProvider(controllerCommandConfig.getMongoDbDelegate());
+                IOrchestrationProvider orchestrationProvider;
+                if (controllerCommandConfig.getLocalWorkerThreads() > 0) {
+                    // worker in the same process, scan jobs do not leave the JVM
+                    orchestrationProvider = new LocalOrchestrationProvider();
+                    workerCommandConfig.setNumberOfThreads(
+                            controllerCommandConfig.getLocalWorkerThreads());
+                    new Worker(workerCommandConfig, orchestrationProvider, persistenceProvider)
+                            .start();
+                } else {
+                    orchestrationProvider =
+                            new RabbitMqOrchestrationProvider(
+                                    controllerCommandConfig.getRabbitMqDelegate());
+                }
                 Controller controller =
                         new Controller(
                                 controllerCommandConfig,
-                                new RabbitMqOrchestrationProvider(
-                                        controllerCommandConfig.getRabbitMqDelegate()),
-                                new MongoPersistenceProvider(
-                                        controllerCommandConfig.getMongoDbDelegate()));
+                                orchestrationProvider,
+                                persistenceProvider);
                 controller.start();
                 break;
             default:
@@ -73,6 +73,12 @@ public class ControllerCommandConfig {
             description = "A file with a list of IP-Ranges or domains which should not be scanned.")
     private String denylistFile;
 
+    @Parameter(
+            names = "-denylistReloadInterval",
+            description =
+                    "Interval in seconds in which the denylist file is checked for modifications and reloaded. 0 reads it only once.")
+    private long denylistReloadInterval = 60;
+
     @Parameter(
             names = "-monitorScan",
             description = "If set the progress of the scans is monitored and logged.")
@@ -97,6 +103,64 @@ public class ControllerCommandConfig {
     @Parameter(names = "-trancoEmail", description = "MX record for number of top x hosts")
     private int trancoEmail;
 
+    @Parameter(
+            names = "-publishBatchSize",
+            validateWith = PositiveInteger.class,
+            description =
+                    "Number of scan jobs that reserve their unconfirmed publishes and are written to RabbitMq together.")
+    private int publishBatchSize = 100;
+
+    @Parameter(
+            names = "-maxUnconfirmedPublishes",
+            validateWith = PositiveInteger.class,
+            description =
+                    "Maximum number of scan jobs that are published but not yet confirmed by RabbitMq.")
+    private int maxUnconfirmedPublishes = 10000;
+
+    @Parameter(
+            names = "-maxScanAttempts",
+            validateWith = PositiveInteger.class,
+            description =
+                    "Maximum number of attempts to scan a target. Timed out or failed scans are retried with exponential backoff, scan jobs that exhausted their attempts are moved to the dead letter queue. 1 disables retries.")
+    private int maxScanAttempts = 1;
+
+    @Parameter(
+            names = "-scanJobTimeout",
+            description =
+                    "Overall timeout for one scan of this bulk scan in ms. Overrides the -scanTimeout of the workers, 0 uses the timeout of the worker.")
+    private int scanJobTimeout = 0;
+
+    @Parameter(
+            names = "-resolverThreads",
+            validateWith = PositiveInteger.class,
+            description =
+                    "Number of threads that resolve the targets of the target list while it is read and publish their scan jobs.")
+    private int resolverThreads = 8;
+
+    @Parameter(
+            names = "-dnsServer",
+            description =
+                    "Recursive name server (host[:port] or [IPv6 address]:port) used to resolve the targets if -dnsMaxInFlight is set. Defaults to the first name server of /etc/resolv.conf.")
+    private String dnsServer;
+
+    @Parameter(
+            names = "-dnsMaxInFlight",
+            description =
+                    "Maximum number of DNS queries in flight while resolving the targets with the built-in non-blocking resolver, which ignores /etc/hosts and search domains. 0 resolves the targets with the blocking resolver of the JVM instead.")
+    private int dnsMaxInFlight = 0;
+
+    @Parameter(
+            names = "-dnsTimeout",
+            description = "Time in ms after which a DNS query without response is sent again.")
+    private long dnsTimeout = 2000;
+
+    @Parameter(
+            names = "-localWorkerThreads",
+            validateWith = PositiveInteger.class,
+            description =
+                    "If set, a worker with the given number of threads runs in the controller process and scan jobs are distributed in-process instead of via RabbitMq.")
+    private int localWorkerThreads;
+
     public ControllerCommandConfig() {
         rabbitMqDelegate = new RabbitMqDelegate();
         mongoDbDelegate = new MongoDbDelegate();
@@ -188,6 +252,10 @@ public class ControllerCommandConfig {
         return denylistFile;
     }
 
+    public long getDenylistReloadInterval() {
+        return denylistReloadInterval;
+    }
+
     public boolean isMonitored() {
         return monitored;
     }
@@ -207,4 +275,40 @@ public class ControllerCommandConfig {
     public int getTrancoEmail() {
         return trancoEmail;
     }
+
+    public int getPublishBatchSize() {
+        return publishBatchSize;
+    }
+
+    public int getMaxUnconfirmedPublishes() {
+        return maxUnconfirmedPublishes;
+    }
+
+    public int getMaxScanAttempts() {
+        return maxScanAttempts;
+    }
+
+    public int getScanJobTimeout() {
+        return scanJobTimeout;
+    }
+
+    public int getResolverThreads() {
+        return resolverThreads;
+    }
+
+    public String getDnsServer() {
+        return dnsServer;
+    }
+
+    public int getDnsMaxInFlight() {
+        return dnsMaxInFlight;
+    }
+
+    public long getDnsTimeout() {
+        return dnsTimeout;
+    }
+
+    public int getLocalWorkerThreads() {
+        return localWorkerThreads;
+    }
 }
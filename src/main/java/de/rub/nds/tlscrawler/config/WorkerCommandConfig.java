@@ -29,6 +29,18 @@ public class WorkerCommandConfig {
             description = "Number of worker threads the crawler slave should use.")
     private int parallelProbeThreads = 20;
 
+    @Parameter(
+            names = "-maxProbeThreads",
+            description =
+                    "Maximum number of probe threads shared by all scans of the worker. Each scan runs at most -parallelProbeThreads probes at once. If 0, numberOfThreads * parallelProbeThreads.")
+    private int maxProbeThreads = 0;
+
+    @Parameter(
+            names = "-numberOfConsumers",
+            description =
+                    "Number of RabbitMq consumers, each with its own channel, that receive scan jobs. The prefetch count is split among them.")
+    private int numberOfConsumers = 1;
+
     @Parameter(
             names = "-scanTimeout",
             description =
@@ -37,6 +49,129 @@ public class WorkerCommandConfig {
                             + "After the timeout the worker tries to shutdown the scan but a shutdown can not be guaranteed due to the TLS-Scanner implementation.")
     private int scanTimeout = 840000;
 
+    @Parameter(
+            names = "-prefetchAdjustInterval",
+            description =
+                    "Interval in ms in which the number of prefetched scan jobs is adapted to the observed scan durations. If 0, the prefetch count is fixed to the number of threads.")
+    private long prefetchAdjustInterval = 1000;
+
+    @Parameter(
+            names = "-virtualThreads",
+            description =
+                    "Run each scan on its own virtual thread (requires Java 21). The number of threads then only limits the number of concurrently running scans and can be set much higher.")
+    private boolean virtualThreads;
+
+    @Parameter(
+            names = "-adaptiveConcurrency",
+            description =
+                    "Adapt the number of concurrently running scans to the observed scan durations, timeout ratio and system load. -numberOfThreads is then the upper bound.")
+    private boolean adaptiveConcurrency;
+
+    @Parameter(
+            names = "-minConcurrency",
+            description =
+                    "Lower bound of the number of concurrently running scans if -adaptiveConcurrency is set.")
+    private int minConcurrency = 1;
+
+    @Parameter(
+            names = "-concurrencyAdjustInterval",
+            description =
+                    "Interval in ms in which the number of concurrently running scans is adapted if -adaptiveConcurrency is set.")
+    private long concurrencyAdjustInterval = 5000;
+
+    @Parameter(
+            names = "-maxScansPerIp",
+            description =
+                    "Maximum number of concurrent scans of the same IP address, further scans of the address are deferred. 0 for no limit.")
+    private int maxScansPerIp = 0;
+
+    @Parameter(
+            names = "-maxScansPerNetwork",
+            description =
+                    "Maximum number of concurrent scans in the same /24 (IPv4) or /48 (IPv6) network, further scans of the network are deferred. 0 for no limit.")
+    private int maxScansPerNetwork = 0;
+
+    @Parameter(
+            names = "-minScanStartInterval",
+            description =
+                    "Minimum time in ms between two scan starts in the same /24 (IPv4) or /48 (IPv6) network. 0 for no limit.")
+    private long minScanStartInterval = 0;
+
+    @Parameter(
+            names = "-maxDeferredScans",
+            description =
+                    "Maximum number of scans that are deferred because of -maxScansPerIp, -maxScansPerNetwork or -minScanStartInterval. Further throttled scan jobs are requeued for other workers. If 0, the number of threads.")
+    private int maxDeferredScans = 0;
+
+    @Parameter(
+            names = "-maxQueuedScans",
+            description =
+                    "Maximum number of received scan jobs that wait for a thread, in addition to the running scans. Further scan jobs are only accepted once scans terminated. If 0, the number of threads.")
+    private int maxQueuedScans = 0;
+
+    @Parameter(
+            names = "-admissionTimeout",
+            description =
+                    "Time in ms a received scan job waits for free capacity before it is requeued for other workers. 0 waits without limit.")
+    private long admissionTimeout = 60000;
+
+    @Parameter(
+            names = "-heapHighWatermark",
+            description =
+                    "Fraction of the old generation that may still be used after a garbage collection. Above it no scan jobs are admitted and the number of concurrent scans is halved. 0 disables heap monitoring.")
+    private double heapHighWatermark = 0;
+
+    @Parameter(
+            names = "-heapLowWatermark",
+            description =
+                    "Fraction of the old generation below which scan jobs are admitted again after heap pressure.")
+    private double heapLowWatermark = 0.7;
+
+    @Parameter(
+            names = "-drainGracePeriod",
+            description =
+                    "Time in ms running scans may take to finish when the worker is stopped. Scan jobs that did not start yet are requeued immediately, those of scans still running afterwards are requeued as well. Should be lower than the time after which the process is killed.")
+    private long drainGracePeriod = 25000;
+
+    @Parameter(
+            names = "-resultQueueSize",
+            description =
+                    "Maximum number of scan results waiting to be written. Scans wait for the result writer only while this queue is full.")
+    private int resultQueueSize = 100;
+
+    @Parameter(
+            names = "-resultBatchSize",
+            description = "Maximum number of scan results that are written to MongoDB at once.")
+    private int resultBatchSize = 20;
+
+    @Parameter(
+            names = "-resultFlushInterval",
+            description =
+                    "Maximum time in ms a scan result waits for further results before its batch is written.")
+    private long resultFlushInterval = 1000;
+
+    @Parameter(
+            names = "-resultWriterThreads",
+            description = "Number of threads that write scan results to MongoDB.")
+    private int resultWriterThreads = 2;
+
+    @Parameter(
+            names = "-reachabilityCheck",
+            description =
+                    "Check whether the target accepts TCP connections on its port before starting a TLS scan. Unreachable targets are completed without scanning them.")
+    private boolean reachabilityCheck = false;
+
+    @Parameter(
+            names = "-reachabilityTimeout",
+            description =
+                    "Time in ms after which a target that did not accept the TCP connection is considered unreachable.")
+    private long reachabilityTimeout = 3000;
+
+    @Parameter(
+            names = "-maxReachabilityChecks",
+            description = "Maximum number of reachability checks that run concurrently.")
+    private int maxReachabilityChecks = 256;
+
     public WorkerCommandConfig() {
         rabbitMqDelegate = new RabbitMqDelegate();
         mongoDbDelegate = new MongoDbDelegate();
@@ -54,11 +189,107 @@ public class WorkerCommandConfig {
         return numberOfThreads;
     }
 
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
     public int getParallelProbeThreads() {
         return parallelProbeThreads;
     }
 
+    public int getMaxProbeThreads() {
+        return maxProbeThreads;
+    }
+
+    public int getNumberOfConsumers() {
+        return numberOfConsumers;
+    }
+
     public int getScanTimeout() {
         return scanTimeout;
     }
+
+    public long getPrefetchAdjustInterval() {
+        return prefetchAdjustInterval;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public boolean isAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    public int getMinConcurrency() {
+        return minConcurrency;
+    }
+
+    public long getConcurrencyAdjustInterval() {
+        return concurrencyAdjustInterval;
+    }
+
+    public int getMaxScansPerIp() {
+        return maxScansPerIp;
+    }
+
+    public int getMaxScansPerNetwork() {
+        return maxScansPerNetwork;
+    }
+
+    public long getMinScanStartInterval() {
+        return minScanStartInterval;
+    }
+
+    public int getMaxDeferredScans() {
+        return maxDeferredScans;
+    }
+
+    public int getMaxQueuedScans() {
+        return maxQueuedScans;
+    }
+
+    public long getAdmissionTimeout() {
+        return admissionTimeout;
+    }
+
+    public double getHeapHighWatermark() {
+        return heapHighWatermark;
+    }
+
+    public double getHeapLowWatermark() {
+        return heapLowWatermark;
+    }
+
+    public long getDrainGracePeriod() {
+        return drainGracePeriod;
+    }
+
+    public int getResultQueueSize() {
+        return resultQueueSize;
+    }
+
+    public int getResultBatchSize() {
+        return resultBatchSize;
+    }
+
+    public long getResultFlushInterval() {
+        return resultFlushInterval;
+    }
+
+    public int getResultWriterThreads() {
+        return resultWriterThreads;
+    }
+
+    public boolean isReachabilityCheck() {
+        return reachabilityCheck;
+    }
+
+    public long getReachabilityTimeout() {
+        return reachabilityTimeout;
+    }
+
+    public int getMaxReachabilityChecks() {
+        return maxReachabilityChecks;
+    }
 }
@@ -8,7 +8,9 @@
  */
 package de.rub.nds.tlscrawler.config.delegate;
 
+import com.beust.jcommander.IParameterValidator;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
 
 public class RabbitMqDelegate {
 
@@ -30,6 +32,91 @@ public class RabbitMqDelegate {
     @Parameter(names = "-rabbitMqTLS")
     private boolean rabbitMqTLS;
 
+    @Parameter(
+            names = "-rabbitMqLegacyEncoding",
+            description =
+                    "Publish scan jobs using java serialization instead of the compact binary encoding. Only required while workers of older versions are still running.")
+    private boolean rabbitMqLegacyEncoding;
+
+    @Parameter(
+            names = "-rabbitMqChannelPoolSize",
+            description = "Maximum number of channels used concurrently for publishing.")
+    private int rabbitMqChannelPoolSize = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(
+            names = "-rabbitMqAckFlushInterval",
+            description =
+                    "Interval in ms in which acknowledgements of completed scan jobs are sent in bulk. 0 sends every acknowledgement immediately.")
+    private long rabbitMqAckFlushInterval = 100;
+
+    @Parameter(
+            names = "-rabbitMqAckBatchSize",
+            description =
+                    "Number of completed scan jobs per consumer after which acknowledgements are sent before the next flush interval.")
+    private int rabbitMqAckBatchSize = 50;
+
+    @Parameter(
+            names = "-rabbitMqPriorityLevels",
+            validateWith = PriorityLevels.class,
+            description =
+                    "Number of priority levels of the scan job queue (1-255, RabbitMq recommends at most 10). Scan jobs of targets with a better tranco rank get a higher priority. 0 disables priorities. Has to be the same for all controllers and workers.")
+    private int rabbitMqPriorityLevels;
+
+    @Parameter(
+            names = "-rabbitMqRetryDelay",
+            description =
+                    "Delay in ms before a timed out or failed scan job is scanned again. The delay doubles with every further attempt.")
+    private long rabbitMqRetryDelay = 60000;
+
+    @Parameter(
+            names = "-rabbitMqRecoveryInterval",
+            description =
+                    "Interval in ms between attempts to recover a lost connection to RabbitMq. 0 disables the automatic recovery.")
+    private long rabbitMqRecoveryInterval = 5000;
+
+    @Parameter(
+            names = "-rabbitMqRecoveryBufferSize",
+            description =
+                    "Maximum number of messages that are buffered while the connection to RabbitMq is recovered.")
+    private int rabbitMqRecoveryBufferSize = 10000;
+
+    @Parameter(
+            names = "-rabbitMqDurable",
+            description =
+                    "Declare durable queues and publish persistent messages, so queued scan jobs survive a restart of RabbitMq. Existing non-durable queues have to be deleted first.")
+    private boolean rabbitMqDurable;
+
+    @Parameter(
+            names = "-rabbitMqDeadLetterQueueLength",
+            description =
+                    "Maximum number of scan jobs in the dead letter queue, the oldest ones are dropped once it is full. Has to be the same for all controllers and workers, an existing dead letter queue with another length has to be deleted first.")
+    private int rabbitMqDeadLetterQueueLength = 100000;
+
+    /** RabbitMq rejects a maximum priority above 255 when the queue is declared. */
+    public static class PriorityLevels implements IParameterValidator {
+        private static final int MAX_PRIORITY = 255;
+
+        public void validate(String name, String value) throws ParameterException {
+            int n;
+            try {
+                n = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new ParameterException(
+                        "Parameter " + name + " should be a number (found " + value + ")");
+            }
+            if (n < 0 || n > MAX_PRIORITY) {
+                throw new ParameterException(
+                        "Parameter "
+                                + name
+                                + " should be 0 or between 1 and "
+                                + MAX_PRIORITY
+                                + " (found "
+                                + value
+                                + ")");
+            }
+        }
+    }
+
     public String getRabbitMqHost() {
         return rabbitMqHost;
     }
@@ -53,4 +140,44 @@ public class RabbitMqDelegate {
     public boolean isRabbitMqTLS() {
         return rabbitMqTLS;
     }
+
+    public int getRabbitMqChannelPoolSize() {
+        return rabbitMqChannelPoolSize;
+    }
+
+    public long getRabbitMqAckFlushInterval() {
+        return rabbitMqAckFlushInterval;
+    }
+
+    public int getRabbitMqAckBatchSize() {
+        return rabbitMqAckBatchSize;
+    }
+
+    public long getRabbitMqRecoveryInterval() {
+        return rabbitMqRecoveryInterval;
+    }
+
+    public int getRabbitMqRecoveryBufferSize() {
+        return rabbitMqRecoveryBufferSize;
+    }
+
+    public boolean isRabbitMqDurable() {
+        return rabbitMqDurable;
+    }
+
+    public int getRabbitMqDeadLetterQueueLength() {
+        return rabbitMqDeadLetterQueueLength;
+    }
+
+    public long getRabbitMqRetryDelay() {
+        return rabbitMqRetryDelay;
+    }
+
+    public int getRabbitMqPriorityLevels() {
+        return rabbitMqPriorityLevels;
+    }
+
+    public boolean isRabbitMqLegacyEncoding() {
+        return rabbitMqLegacyEncoding;
+    }
 }
@@ -12,5 +12,6 @@ public enum Status {
     Ready,
     Timeout,
     DoneNoResult,
-    DoneResultWritten
+    DoneResultWritten,
+    Error
 }
@@ -0,0 +1,209 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Adapts the number of concurrently running scans with additive increase and multiplicative
+ * decrease (AIMD). After each interval the scans that finished or timed out in the interval are
+ * evaluated. The limit is decreased if
+ *
+ * <ul>
+ *   <li>too many scans timed out,
+ *   <li>the system load exceeds the number of processors or
+ *   <li>scans take much longer than the lowest recently observed duration.
+ * </ul>
+ *
+ * Otherwise the limit is increased if it is fully used. The limit starts at its upper bound.
+ *
+ * <p>An interval is only evaluated once enough scans finished, otherwise its scans are evaluated
+ * together with those of the next interval. Timeouts are only observed when they expire and the
+ * system load is a one minute average, so both still reflect the old limit for a while after a
+ * decrease. The limit is therefore held for a scan timeout, at least a minute, after a decrease.
+ */
+class ConcurrencyLimiter {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** Ratio of timed out scans above which the limit is decreased. */
+    private static final double TIMEOUT_RATIO_THRESHOLD = 0.1;
+
+    /** System load average per processor above which the limit is decreased. */
+    private static final double CPU_LOAD_THRESHOLD = 1.0;
+
+    /** Factor by which the scan duration may exceed the baseline before the limit is decreased. */
+    private static final double LATENCY_GRADIENT_THRESHOLD = 2.0;
+
+    private static final double DECREASE_FACTOR = 0.75;
+
+    /** Growth of the baseline duration per interval, so it follows changes of the target mix. */
+    private static final double BASELINE_DRIFT = 1.05;
+
+    /** Minimum number of finished or timed out scans an evaluation is based on. */
+    private static final int MIN_SAMPLES = 10;
+
+    /** Period covered by the system load average. */
+    private static final long LOAD_AVERAGE_PERIOD_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    /** Time in ms the limit is held after a decrease. */
+    private final long holdMs;
+
+    private final IntConsumer limitListener;
+
+    private final IntSupplier activeScans;
+
+    private final IntSupplier queuedScans;
+
+    private final OperatingSystemMXBean operatingSystem =
+            ManagementFactory.getOperatingSystemMXBean();
+
+    private final ScheduledExecutorService adjustExecutor;
+
+    private int finishedScans;
+
+    private int timedOutScans;
+
+    private long scanDurationSum;
+
+    private double baselineScanDuration = -1;
+
+    /** Time until which the limit is held after a decrease. */
+    private long holdUntil;
+
+    private volatile int limit;
+
+    /**
+     * @param minLimit lower bound of the limit
+     * @param maxLimit upper bound and initial value of the limit
+     * @param scanTimeout timeout of a scan in ms
+     * @param limitListener is called with the new limit whenever it changes
+     * @param activeScans supplies the number of running scans
+     * @param queuedScans supplies the number of received scans that wait for a free slot
+     */
+    ConcurrencyLimiter(
+            int minLimit,
+            int maxLimit,
+            long scanTimeout,
+            IntConsumer limitListener,
+            IntSupplier activeScans,
+            IntSupplier queuedScans) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.minLimit = Math.max(1, Math.min(minLimit, this.maxLimit));
+        this.holdMs = Math.max(scanTimeout, LOAD_AVERAGE_PERIOD_MS);
+        this.limitListener = limitListener;
+        this.activeScans = activeScans;
+        this.queuedScans = queuedScans;
+        this.limit = this.maxLimit;
+        this.adjustExecutor =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "concurrency-limiter");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    /**
+     * Applies the initial limit and starts adjusting it periodically.
+     *
+     * @param intervalMs interval between two adjustments
+     */
+    void start(long intervalMs) {
+        limitListener.accept(limit);
+        adjustExecutor.scheduleWithFixedDelay(
+                this::adjust, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        adjustExecutor.shutdown();
+    }
+
+    synchronized void recordScan(long durationMs, boolean timedOut) {
+        if (timedOut) {
+            timedOutScans++;
+        } else {
+            finishedScans++;
+            scanDurationSum += durationMs;
+        }
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /** Halves the limit immediately, e.g. under heap pressure. */
+    synchronized void shrink() {
+        holdUntil = System.currentTimeMillis() + holdMs;
+        int newLimit = Math.max(minLimit, limit / 2);
+        if (newLimit != limit) {
+            limit = newLimit;
+            limitListener.accept(newLimit);
+        }
+    }
+
+    synchronized void adjust() {
+        int samples = finishedScans + timedOutScans;
+        if (samples < MIN_SAMPLES) {
+            // too few to learn from, e.g. most scans are still running
+            return;
+        }
+        double timeoutRatio = (double) timedOutScans / samples;
+        double meanScanDuration = finishedScans > 0 ? (double) scanDurationSum / finishedScans : -1;
+        if (meanScanDuration >= 0) {
+            baselineScanDuration =
+                    baselineScanDuration < 0
+                            ? meanScanDuration
+                            : Math.min(meanScanDuration, baselineScanDuration * BASELINE_DRIFT);
+        }
+        double cpuLoad =
+                operatingSystem.getSystemLoadAverage() / operatingSystem.getAvailableProcessors();
+        finishedScans = 0;
+        timedOutScans = 0;
+        scanDurationSum = 0;
+
+        long now = System.currentTimeMillis();
+        if (now < holdUntil) {
+            // the samples may still stem from the limit before the last decrease
+            return;
+        }
+        int newLimit = limit;
+        if (timeoutRatio > TIMEOUT_RATIO_THRESHOLD
+                || cpuLoad > CPU_LOAD_THRESHOLD
+                || meanScanDuration > baselineScanDuration * LATENCY_GRADIENT_THRESHOLD) {
+            newLimit = Math.max(minLimit, (int) (limit * DECREASE_FACTOR));
+            holdUntil = now + holdMs;
+        } else if (activeScans.getAsInt() >= limit || queuedScans.getAsInt() > 0) {
+            newLimit = Math.min(maxLimit, limit + 1);
+        }
+        if (newLimit != limit) {
+            LOGGER.debug(
+                    "Changing concurrency limit from {} to {} (timeouts {}%, load {}, mean scan duration {} ms)",
+                    limit,
+                    newLimit,
+                    Math.round(timeoutRatio * 100),
+                    String.format("%.2f", cpuLoad),
+                    Math.round(meanScanDuration));
+            limit = newLimit;
+            limitListener.accept(newLimit);
+        }
+    }
+}
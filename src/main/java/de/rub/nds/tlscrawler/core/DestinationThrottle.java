@@ -0,0 +1,301 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.core;
+
+import de.rub.nds.tlscrawler.data.ScanTarget;
+import de.rub.nds.tlscrawler.scans.Scan;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.validator.routines.InetAddressValidator;
+
+/**
+ * Limits the number of concurrent scans per IP address and per network, which is the /24 for IPv4
+ * and the /48 for IPv6 addresses. The start of scans in the same network can additionally be spaced
+ * by a minimum interval. Many hostnames of a target list often resolve to the same CDN addresses,
+ * which would otherwise be scanned by many threads at the same time.
+ *
+ * <p>Throttled scans do not block a thread. Up to a limit they are deferred and started from a
+ * scheduler thread as soon as a scan of their destination terminated or their start interval
+ * passed. Further throttled scans are rejected, so they can be returned to the queue for other
+ * workers instead of occupying the capacity of this worker.
+ */
+class DestinationThrottle {
+
+    /** Outcome of submitting a scan. */
+    enum Submission {
+        STARTED,
+        DEFERRED,
+        REJECTED
+    }
+
+    /** Interval in which idle destinations are forgotten. */
+    private static final long PURGE_INTERVAL_MS = 60000;
+
+    private static final int IPV4_PREFIX_BYTES = 3;
+
+    private static final int IPV6_PREFIX_BYTES = 6;
+
+    private final int maxScansPerIp;
+
+    private final int maxScansPerNetwork;
+
+    private final long minStartInterval;
+
+    private final int maxDeferredScans;
+
+    /** Guarded by this. */
+    private final Map<String, Destination> ipDestinations = new HashMap<>();
+
+    /** Guarded by this. */
+    private final Map<String, Destination> networkDestinations = new HashMap<>();
+
+    /** Deferred scans in the order of their submission, guarded by this. */
+    private final List<DeferredScan> deferredScans = new LinkedList<>();
+
+    /** Time of the next scheduled start of deferred scans, guarded by this. */
+    private long nextWakeUp = Long.MAX_VALUE;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param maxScansPerIp maximum number of concurrent scans of an IP address, 0 for no limit
+     * @param maxScansPerNetwork maximum number of concurrent scans of a network, 0 for no limit
+     * @param minStartInterval minimum time in ms between two scan starts in the same network
+     * @param maxDeferredScans maximum number of deferred scans, further throttled scans are
+     *     rejected
+     */
+    DestinationThrottle(
+            int maxScansPerIp,
+            int maxScansPerNetwork,
+            long minStartInterval,
+            int maxDeferredScans) {
+        this.maxScansPerIp = maxScansPerIp;
+        this.maxScansPerNetwork = maxScansPerNetwork;
+        this.minStartInterval = minStartInterval;
+        this.maxDeferredScans = Math.max(0, maxDeferredScans);
+        this.scheduler =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "destination-throttle");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        this.scheduler.scheduleWithFixedDelay(
+                this::purgeIdleDestinations,
+                PURGE_INTERVAL_MS,
+                PURGE_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts the scan now if its destination allows it, otherwise later if not too many scans are
+     * deferred already. Each started scan has to be {@link #release(ScanTarget) released} once it
+     * terminated.
+     *
+     * @param scan the scan
+     * @param start starts the scan, must not block
+     * @return whether the scan was started, deferred or rejected
+     */
+    Submission submit(Scan scan, Runnable start) {
+        DeferredScan deferredScan = new DeferredScan(scan, start);
+        synchronized (this) {
+            long delay = tryAcquire(deferredScan);
+            if (delay != 0) {
+                if (deferredScans.size() >= maxDeferredScans) {
+                    return Submission.REJECTED;
+                }
+                deferredScans.add(deferredScan);
+                if (delay > 0) {
+                    scheduleWakeUp(System.currentTimeMillis() + delay);
+                }
+                return Submission.DEFERRED;
+            }
+        }
+        start.run();
+        return Submission.STARTED;
+    }
+
+    /**
+     * @param scanTarget target of a terminated scan
+     */
+    void release(ScanTarget scanTarget) {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            release(ipDestinations, scanTarget.getIp(), now);
+            release(networkDestinations, getNetwork(scanTarget.getIp()), now);
+            if (deferredScans.isEmpty()) {
+                return;
+            }
+        }
+        scheduler.execute(this::startDeferredScans);
+    }
+
+    /**
+     * Removes all deferred scans, they will not be started anymore.
+     *
+     * @return the removed scans
+     */
+    synchronized List<Scan> withdrawDeferredScans() {
+        List<Scan> withdrawn = new ArrayList<>();
+        for (DeferredScan deferredScan : deferredScans) {
+            withdrawn.add(deferredScan.scan);
+        }
+        deferredScans.clear();
+        return withdrawn;
+    }
+
+    /**
+     * @return number of scans that wait for their destination
+     */
+    synchronized int getDeferredScans() {
+        return deferredScans.size();
+    }
+
+    /** Starts the deferred scans whose destination allows it, in the order of their submission. */
+    private void startDeferredScans() {
+        List<Runnable> starts = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (nextWakeUp <= now) {
+                nextWakeUp = Long.MAX_VALUE;
+            }
+            long earliestStart = Long.MAX_VALUE;
+            Iterator<DeferredScan> iterator = deferredScans.iterator();
+            while (iterator.hasNext()) {
+                DeferredScan scan = iterator.next();
+                long delay = tryAcquire(scan);
+                if (delay == 0) {
+                    iterator.remove();
+                    starts.add(scan.start);
+                } else if (delay > 0) {
+                    earliestStart = Math.min(earliestStart, now + delay);
+                }
+            }
+            if (earliestStart != Long.MAX_VALUE) {
+                scheduleWakeUp(earliestStart);
+            }
+        }
+        starts.forEach(Runnable::run);
+    }
+
+    /** Guarded by this. */
+    private void scheduleWakeUp(long time) {
+        if (time < nextWakeUp) {
+            nextWakeUp = time;
+            scheduler.schedule(
+                    this::startDeferredScans,
+                    Math.max(0, time - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Guarded by this.
+     *
+     * @return 0 if the scan may start and was counted, -1 if it has to wait for a running scan of
+     *     its destination, otherwise the delay until it may start
+     */
+    private long tryAcquire(DeferredScan scan) {
+        long now = System.currentTimeMillis();
+        Destination ip = ipDestinations.computeIfAbsent(scan.ip, key -> new Destination());
+        Destination network =
+                networkDestinations.computeIfAbsent(scan.network, key -> new Destination());
+        if (maxScansPerIp > 0 && ip.running >= maxScansPerIp) {
+            return -1;
+        }
+        if (maxScansPerNetwork > 0 && network.running >= maxScansPerNetwork) {
+            return -1;
+        }
+        if (now < network.nextStart) {
+            return network.nextStart - now;
+        }
+        ip.running++;
+        network.running++;
+        network.nextStart = now + minStartInterval;
+        return 0;
+    }
+
+    private static void release(Map<String, Destination> destinations, String key, long now) {
+        Destination destination = destinations.get(key);
+        if (destination != null) {
+            destination.running--;
+            if (destination.isIdle(now)) {
+                destinations.remove(key);
+            }
+        }
+    }
+
+    private synchronized void purgeIdleDestinations() {
+        long now = System.currentTimeMillis();
+        ipDestinations.values().removeIf(destination -> destination.isIdle(now));
+        networkDestinations.values().removeIf(destination -> destination.isIdle(now));
+    }
+
+    /**
+     * @param ip address of a target
+     * @return the /24 network of an IPv4 address or the /48 network of an IPv6 address, the ip
+     *     itself if it is not an IP address
+     */
+    static String getNetwork(String ip) {
+        if (ip == null || !InetAddressValidator.getInstance().isValid(ip)) {
+            return ip;
+        }
+        try {
+            // a literal address is parsed without any lookup
+            byte[] address = InetAddress.getByName(ip).getAddress();
+            int prefixBytes = address.length == 4 ? IPV4_PREFIX_BYTES : IPV6_PREFIX_BYTES;
+            StringBuilder network = new StringBuilder(prefixBytes * 3 + 3);
+            for (int i = 0; i < prefixBytes; i++) {
+                network.append(address[i] & 0xFF).append('.');
+            }
+            return network.append('/').append(prefixBytes * 8).toString();
+        } catch (UnknownHostException e) {
+            return ip;
+        }
+    }
+
+    private static class DeferredScan {
+
+        private final Scan scan;
+
+        private final String ip;
+
+        private final String network;
+
+        private final Runnable start;
+
+        private DeferredScan(Scan scan, Runnable start) {
+            this.scan = scan;
+            this.ip = scan.getScanJob().getScanTarget().getIp();
+            this.network = getNetwork(ip);
+            this.start = start;
+        }
+    }
+
+    private static class Destination {
+
+        private int running;
+
+        /** Earliest time of the next scan start. */
+        private long nextStart;
+
+        private boolean isIdle(long now) {
+            return running <= 0 && now >= nextStart;
+        }
+    }
+}
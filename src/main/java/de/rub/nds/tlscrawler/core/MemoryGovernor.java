@@ -0,0 +1,156 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.NotificationEmitter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Detects heap pressure of a worker. The old generation pools are monitored with a collection usage
+ * threshold, i.e. on the memory that is still used after a garbage collection. Once it exceeds the
+ * high watermark, the worker is under pressure until the usage of all pools after a garbage
+ * collection fell below the low watermark. The current usage is not considered, as it includes
+ * garbage and may not fall below the low watermark although most objects are dead.
+ *
+ * <p>Threshold notifications are delivered immediately by the JVM. The usage is additionally
+ * checked periodically, which is also how the end of the pressure is detected.
+ */
+class MemoryGovernor {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final long CHECK_INTERVAL_MS = 1000;
+
+    /** Is informed when the heap pressure starts and ends. */
+    interface PressureListener {
+        void onHeapPressure();
+
+        void onHeapRelief();
+    }
+
+    private final double highWatermark;
+
+    private final double lowWatermark;
+
+    private final PressureListener pressureListener;
+
+    private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+
+    private final AtomicLong pressureEvents = new AtomicLong();
+
+    private final ScheduledExecutorService checkExecutor;
+
+    /** Guarded by this. */
+    private boolean underPressure;
+
+    /**
+     * @param highWatermark fraction of the maximum pool size after a garbage collection above which
+     *     the worker is under pressure
+     * @param lowWatermark fraction of the maximum pool size below which the pressure ends
+     * @param pressureListener is informed when the heap pressure starts and ends
+     */
+    MemoryGovernor(double highWatermark, double lowWatermark, PressureListener pressureListener) {
+        this.highWatermark = highWatermark;
+        this.lowWatermark = Math.min(lowWatermark, highWatermark);
+        this.pressureListener = pressureListener;
+        this.checkExecutor =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "memory-governor");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    void start() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            // only the pools of long-lived objects support a usage threshold
+            if (pool.getType() == MemoryType.HEAP
+                    && pool.isUsageThresholdSupported()
+                    && pool.isCollectionUsageThresholdSupported()
+                    && pool.getUsage().getMax() > 0) {
+                pool.setCollectionUsageThreshold((long) (pool.getUsage().getMax() * highWatermark));
+                pools.add(pool);
+            }
+        }
+        if (pools.isEmpty()) {
+            LOGGER.warn("No heap memory pool supports usage thresholds, heap is not monitored");
+            return;
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+                .addNotificationListener(
+                        (notification, handback) -> {
+                            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(
+                                    notification.getType())) {
+                                check();
+                            }
+                        },
+                        null,
+                        null);
+        checkExecutor.scheduleWithFixedDelay(
+                this::check, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        checkExecutor.shutdown();
+    }
+
+    synchronized boolean isUnderPressure() {
+        return underPressure;
+    }
+
+    /**
+     * @return number of times the worker came under heap pressure
+     */
+    long getPressureEvents() {
+        return pressureEvents.get();
+    }
+
+    private synchronized void check() {
+        if (!underPressure) {
+            for (MemoryPoolMXBean pool : pools) {
+                if (pool.getCollectionUsage() != null
+                        && pool.getCollectionUsage().getUsed()
+                                >= pool.getUsage().getMax() * highWatermark) {
+                    underPressure = true;
+                    pressureEvents.incrementAndGet();
+                    LOGGER.warn(
+                            "Heap pressure in {} ({} of {} bytes used after GC), pausing admission",
+                            pool.getName(),
+                            pool.getCollectionUsage().getUsed(),
+                            pool.getUsage().getMax());
+                    pressureListener.onHeapPressure();
+                    return;
+                }
+            }
+        } else {
+            for (MemoryPoolMXBean pool : pools) {
+                if (pool.getCollectionUsage() != null
+                        && pool.getCollectionUsage().getUsed()
+                                >= pool.getUsage().getMax() * lowWatermark) {
+                    return;
+                }
+            }
+            underPressure = false;
+            LOGGER.info("Heap pressure ended, resuming admission");
+            pressureListener.onHeapRelief();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.core;
+
+import de.rub.nds.tlscrawler.orchestration.IOrchestrationProvider;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Adapts the prefetch count of a worker to the observed scan durations. The prefetch count covers
+ * the running scans plus a buffer of received scan jobs that wait for a free thread. The buffer is
+ * sized to the number of scans that are expected to complete while new scan jobs are on their way
+ * after an acknowledgement. Fast scans therefore keep enough scan jobs buffered, while slow scans
+ * (e.g. of hosts that time out) get no buffer at all, so they do not hold back scan jobs that idle
+ * workers could process.
+ *
+ * <p>If threads are idle although nothing is buffered, the buffer is increased step by step until
+ * the threads are busy again. Scan jobs deferred because of their destination are not acknowledged
+ * yet, the prefetch count is raised by their number so they do not take the place of other scan
+ * jobs.
+ */
+class PrefetchController {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** Approximate time between acknowledging a scan job and receiving the next one. */
+    private static final long REFILL_LATENCY_MS = 1000;
+
+    /** Weight of a new sample in the moving average of the scan duration. */
+    private static final double DURATION_WEIGHT = 0.05;
+
+    private final IOrchestrationProvider orchestrationProvider;
+
+    private final IntSupplier concurrencyLimit;
+
+    private final IntSupplier activeScans;
+
+    private final IntSupplier queuedScans;
+
+    private final IntSupplier deferredScans;
+
+    private final ScheduledExecutorService adjustExecutor;
+
+    private double meanScanDuration = -1;
+
+    private int starvationBoost;
+
+    private volatile int prefetchCount;
+
+    /**
+     * @param orchestrationProvider on which the prefetch count is set
+     * @param concurrencyLimit supplies the maximum number of concurrently running scans
+     * @param activeScans supplies the number of running scans
+     * @param queuedScans supplies the number of received scans that wait for a thread
+     * @param deferredScans supplies the number of received scans that wait for their destination
+     */
+    PrefetchController(
+            IOrchestrationProvider orchestrationProvider,
+            IntSupplier concurrencyLimit,
+            IntSupplier activeScans,
+            IntSupplier queuedScans,
+            IntSupplier deferredScans) {
+        this.orchestrationProvider = orchestrationProvider;
+        this.concurrencyLimit = concurrencyLimit;
+        this.activeScans = activeScans;
+        this.queuedScans = queuedScans;
+        this.deferredScans = deferredScans;
+        this.prefetchCount = concurrencyLimit.getAsInt();
+        this.adjustExecutor =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "prefetch-controller");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    /**
+     * Starts adjusting the prefetch count periodically.
+     *
+     * @param intervalMs interval between two adjustments
+     */
+    void start(long intervalMs) {
+        adjustExecutor.scheduleWithFixedDelay(
+                this::adjust, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        adjustExecutor.shutdown();
+    }
+
+    synchronized void recordScanDuration(long durationMs) {
+        if (meanScanDuration < 0) {
+            meanScanDuration = durationMs;
+        } else {
+            meanScanDuration += DURATION_WEIGHT * (durationMs - meanScanDuration);
+        }
+    }
+
+    int getPrefetchCount() {
+        return prefetchCount;
+    }
+
+    synchronized long getMeanScanDuration() {
+        return Math.round(Math.max(0, meanScanDuration));
+    }
+
+    synchronized void adjust() {
+        if (meanScanDuration < 0) {
+            // no scan finished yet
+            return;
+        }
+        int threadCount = concurrencyLimit.getAsInt();
+        boolean starved = activeScans.getAsInt() < threadCount && queuedScans.getAsInt() == 0;
+        starvationBoost =
+                starved ? Math.min(threadCount, starvationBoost + 1) : starvationBoost / 2;
+
+        // completions per refill latency if all threads are busy, none if scans take longer
+        double expectedCompletions =
+                threadCount * REFILL_LATENCY_MS / Math.max(1.0, meanScanDuration);
+        int buffer = Math.min(threadCount, (int) Math.floor(expectedCompletions) + starvationBoost);
+        int newPrefetchCount = threadCount + buffer + deferredScans.getAsInt();
+        if (newPrefetchCount != prefetchCount) {
+            LOGGER.debug(
+                    "Changing prefetch count from {} to {} (mean scan duration {} ms)",
+                    prefetchCount,
+                    newPrefetchCount,
+                    Math.round(meanScanDuration));
+            prefetchCount = newPrefetchCount;
+            orchestrationProvider.setPrefetchCount(newPrefetchCount);
+        }
+    }
+}
@@ -11,25 +11,26 @@ package de.rub.nds.tlscrawler.core;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.rub.nds.tlscrawler.data.BulkScan;
 import de.rub.nds.tlscrawler.data.BulkScanJobDetails;
-import de.rub.nds.tlscrawler.orchestration.RabbitMqOrchestrationProvider;
+import de.rub.nds.tlscrawler.data.ProgressDelta;
+import de.rub.nds.tlscrawler.orchestration.IOrchestrationProvider;
 import de.rub.nds.tlscrawler.persistence.IPersistenceProvider;
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 
 /**
- * The ProgressMonitor keeps track of the progress of the running bulk scans. It consumes the done
- * notifications from the workers and counts for each bulk scan how many scans are done, how many
- * timed out and how many results were written to the DB.
+ * The ProgressMonitor keeps track of the progress of the running bulk scans. It consumes the
+ * progress deltas that the workers periodically send and counts for each bulk scan how many scans
+ * are done, how many timed out, how many were moved to the dead letter queue and how many results
+ * were written to the DB.
  */
 public class ProgressMonitor {
 
@@ -37,7 +38,7 @@ public class ProgressMonitor {
 
     private final Map<String, BulkScanJobDetails> scanJobDetailsById;
 
-    private final RabbitMqOrchestrationProvider orchestrationProvider;
+    private final IOrchestrationProvider orchestrationProvider;
 
     private final IPersistenceProvider persistenceProvider;
 
@@ -46,10 +47,10 @@ public class ProgressMonitor {
     private boolean listenerRegistered;
 
     public ProgressMonitor(
-            RabbitMqOrchestrationProvider orchestrationProvider,
+            IOrchestrationProvider orchestrationProvider,
             IPersistenceProvider persistenceProvider,
             Scheduler scheduler) {
-        this.scanJobDetailsById = new HashMap<>();
+        this.scanJobDetailsById = new ConcurrentHashMap<>();
         this.orchestrationProvider = orchestrationProvider;
         this.persistenceProvider = persistenceProvider;
         this.scheduler = scheduler;
@@ -64,38 +65,13 @@ public class ProgressMonitor {
     public void startMonitoringBulkScanProgress(BulkScan bulkScan) {
         if (!listenerRegistered) {
             orchestrationProvider.registerDoneNotificationConsumer(
-                    (consumerTag, scanJob) -> {
-                        String bulkScanId = scanJob.getBulkScanId();
+                    (consumerTag, progressDelta) -> {
+                        String bulkScanId = progressDelta.getBulkScanId();
                         try {
-                            if (scanJobDetailsById.containsKey(bulkScanId)) {
-                                AtomicInteger counter =
-                                        getScanJobDetails(bulkScanId).getDoneScanJobs();
-                                switch (scanJob.getStatus()) {
-                                    case Timeout:
-                                        getScanJobDetails(bulkScanId)
-                                                .getScanTimeouts()
-                                                .incrementAndGet();
-                                        break;
-                                    case DoneResultWritten:
-                                        getScanJobDetails(bulkScanId)
-                                                .getResultsWritten()
-                                                .incrementAndGet();
-                                        break;
-                                }
-                                if (counter.incrementAndGet()
-                                        == (bulkScan.getScanJobsPublished() != 0
-                                                ? bulkScan.getScanJobsPublished()
-                                                : bulkScan.getTargetsGiven())) {
-                                    this.stopMonitoringAndFinalizeBulkScan(scanJob.getBulkScanId());
-                                } else {
-                                    LOGGER.info(
-                                            "BulkScan '{}': {} of {} scan jobs done",
-                                            bulkScanId,
-                                            counter.get(),
-                                            (bulkScan.getScanJobsPublished() != 0
-                                                    ? bulkScan.getScanJobsPublished()
-                                                    : bulkScan.getTargetsGiven()));
-                                }
+                            BulkScanJobDetails details = getScanJobDetails(bulkScanId);
+                            if (details != null) {
+                                count(details, progressDelta);
+                                checkBulkScanFinished(bulkScanId);
                             }
                         } catch (Exception e) {
                             LOGGER.error("Exception in done notification consumer:", e);
@@ -107,6 +83,65 @@ public class ProgressMonitor {
         this.scanJobDetailsById.put(bulkScan.get_id(), bulkScanJobDetails);
     }
 
+    /**
+     * Adds the done scan jobs of the delta to the counters of the bulk scan. Scan jobs with a
+     * publish id are only counted the first time they are reported, as a scan job that was
+     * published again after a connection loss may be delivered twice.
+     */
+    private static void count(BulkScanJobDetails details, ProgressDelta progressDelta) {
+        details.getScanTimeouts().addAndGet(progressDelta.getScanTimeouts());
+        details.getResultsWritten().addAndGet(progressDelta.getResultsWritten());
+        details.getScanJobsDeadLettered().addAndGet(progressDelta.getDeadLettered());
+        int doneScanJobs = progressDelta.getDoneScanJobs();
+        int[] publishIds = progressDelta.getPublishIds();
+        for (int i = 0; i < publishIds.length; i++) {
+            if (!details.markDone(publishIds[i])) {
+                continue;
+            }
+            byte outcome = progressDelta.getOutcomes()[i];
+            if ((outcome & ProgressDelta.TIMEOUT) != 0) {
+                details.getScanTimeouts().incrementAndGet();
+            }
+            if ((outcome & ProgressDelta.RESULT_WRITTEN) != 0) {
+                details.getResultsWritten().incrementAndGet();
+            }
+            if ((outcome & ProgressDelta.DEAD_LETTERED) != 0) {
+                details.getScanJobsDeadLettered().incrementAndGet();
+            }
+            doneScanJobs++;
+        }
+        details.getDoneScanJobs().addAndGet(doneScanJobs);
+    }
+
+    /**
+     * Finishes the monitoring of the bulk scan if all of its published scan jobs are done. While
+     * the target list is still read, the number of published scan jobs is not known yet and the
+     * bulk scan is never finished.
+     *
+     * @param bulkScanId of the bulk scan to check
+     */
+    public synchronized void checkBulkScanFinished(String bulkScanId) {
+        BulkScanJobDetails details = getScanJobDetails(bulkScanId);
+        if (details == null) {
+            // already finished
+            return;
+        }
+        int doneScanJobs = details.getDoneScanJobs().get();
+        int expectedScanJobs = details.getBulkScan().getScanJobsPublished();
+        if (expectedScanJobs == 0) {
+            LOGGER.info(
+                    "BulkScan '{}': {} scan jobs done, still publishing", bulkScanId, doneScanJobs);
+        } else if (doneScanJobs >= expectedScanJobs) {
+            this.stopMonitoringAndFinalizeBulkScan(bulkScanId);
+        } else {
+            LOGGER.info(
+                    "BulkScan '{}': {} of {} scan jobs done",
+                    bulkScanId,
+                    doneScanJobs,
+                    expectedScanJobs);
+        }
+    }
+
     /**
      * Finishes the monitoring, updates the bulk scan in DB, sends HTTP notification if configured
      * and shuts the controller down if all bulk scans are finished.
@@ -121,6 +156,7 @@ public class ProgressMonitor {
         scan.setEndTime(System.currentTimeMillis());
         scan.setResultsWritten(bulkScanJobDetails.getResultsWritten().get());
         scan.setScanTimeouts(bulkScanJobDetails.getScanTimeouts().get());
+        scan.setScanJobsDeadLettered(bulkScanJobDetails.getScanJobsDeadLettered().get());
         persistenceProvider.updateBulkScan(scan);
         LOGGER.info("Persisted updated BulkScan with id: {}", scan.get_id());
 
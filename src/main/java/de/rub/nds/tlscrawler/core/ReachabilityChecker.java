@@ -0,0 +1,276 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.core;
+
+import de.rub.nds.tlscrawler.data.ScanTarget;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Checks whether targets accept TCP connections on their port before they are scanned. Many targets
+ * of a list do not, which the TLS-Scanner only notices after it started its probes.
+ *
+ * <p>The connections are established without blocking by a single thread, so many targets are
+ * checked concurrently. The round trip time of the connection establishment is measured.
+ */
+class ReachabilityChecker {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** Maximum time a select waits, timeouts are checked in this interval. */
+    private static final long SELECT_INTERVAL_MS = 50;
+
+    /** Weight of a new round trip time in the moving average. */
+    private static final double RTT_SMOOTHING = 0.1;
+
+    /** Is informed about the outcome of a check, must not block. */
+    interface ReachabilityListener {
+        /**
+         * @param rttMs time it took to establish the connection
+         */
+        void onReachable(long rttMs);
+
+        void onUnreachable();
+
+        /** Called instead of an outcome if the check was withdrawn. */
+        void onWithdrawn();
+    }
+
+    private final long timeoutMs;
+
+    private final int maxChecks;
+
+    private final Selector selector;
+
+    /** Checks that did not start yet, as at most maxChecks connections are pending. */
+    private final Queue<Check> waitingChecks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger unreachableTargets = new AtomicInteger();
+
+    /** Moving average of the round trip time, as bits of a double, negative before the first. */
+    private final AtomicLong meanRtt = new AtomicLong(Double.doubleToLongBits(-1));
+
+    private final Thread selectorThread;
+
+    private volatile boolean stopped;
+
+    /** Set once all checks are withdrawn, further checks are withdrawn immediately. */
+    private volatile boolean withdrawn;
+
+    /**
+     * @param timeoutMs time after which a target that did not accept the connection is unreachable
+     * @param maxChecks maximum number of connections that are established concurrently
+     * @throws IOException if the selector cannot be opened
+     */
+    ReachabilityChecker(long timeoutMs, int maxChecks) throws IOException {
+        this.timeoutMs = timeoutMs;
+        this.maxChecks = Math.max(1, maxChecks);
+        this.selector = Selector.open();
+        this.selectorThread = new Thread(this::select, "reachability-checker");
+        this.selectorThread.setDaemon(true);
+    }
+
+    void start() {
+        selectorThread.start();
+    }
+
+    void stop() {
+        stopped = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Withdraws all waiting and running checks, e.g. because the worker stops. Their listeners are
+     * informed from the thread of the checker.
+     */
+    void withdrawChecks() {
+        withdrawn = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Checks whether the target accepts connections on its port. The listener is called from the
+     * thread of the checker.
+     *
+     * @param scanTarget target to check
+     * @param listener is informed about the outcome
+     */
+    void check(ScanTarget scanTarget, ReachabilityListener listener) {
+        waitingChecks.add(new Check(scanTarget, listener));
+        selector.wakeup();
+    }
+
+    /**
+     * @return number of targets that were not reachable
+     */
+    int getUnreachableTargets() {
+        return unreachableTargets.get();
+    }
+
+    /**
+     * @return moving average of the round trip time in ms, -1 if no target was reachable yet
+     */
+    long getMeanRtt() {
+        return Math.round(Double.longBitsToDouble(meanRtt.get()));
+    }
+
+    private void select() {
+        while (!stopped) {
+            try {
+                if (withdrawn) {
+                    withdrawAll();
+                }
+                startWaitingChecks();
+                selector.select(SELECT_INTERVAL_MS);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    finishConnect(key);
+                }
+                selector.selectedKeys().clear();
+                expireChecks();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Exception while checking reachability: ", e);
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close selector: ", e);
+        }
+    }
+
+    private void startWaitingChecks() {
+        Check check;
+        while (selector.keys().size() < maxChecks && (check = waitingChecks.poll()) != null) {
+            SocketChannel channel = null;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                check.start = System.nanoTime();
+                // the ip is a literal address, so no lookup happens here
+                if (channel.connect(
+                        new InetSocketAddress(
+                                check.scanTarget.getIp(), check.scanTarget.getPort()))) {
+                    channel.close();
+                    reachable(check);
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT, check);
+                }
+            } catch (IOException | RuntimeException e) {
+                close(channel);
+                unreachable(check);
+            }
+        }
+    }
+
+    private void withdrawAll() {
+        Check check;
+        while ((check = waitingChecks.poll()) != null) {
+            notify(check.listener::onWithdrawn);
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid()) {
+                key.cancel();
+                close((SocketChannel) key.channel());
+                notify(((Check) key.attachment()).listener::onWithdrawn);
+            }
+        }
+    }
+
+    private void finishConnect(SelectionKey key) {
+        Check check = (Check) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        try {
+            if (!channel.finishConnect()) {
+                return;
+            }
+            key.cancel();
+            close(channel);
+            reachable(check);
+        } catch (IOException e) {
+            // e.g. the connection was refused
+            key.cancel();
+            close(channel);
+            unreachable(check);
+        }
+    }
+
+    private void expireChecks() {
+        long now = System.nanoTime();
+        List<SelectionKey> expiredKeys = new ArrayList<>();
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && now - ((Check) key.attachment()).start >= timeoutMs * 1_000_000L) {
+                expiredKeys.add(key);
+            }
+        }
+        for (SelectionKey key : expiredKeys) {
+            key.cancel();
+            close((SocketChannel) key.channel());
+            unreachable((Check) key.attachment());
+        }
+    }
+
+    private void reachable(Check check) {
+        long rttMs = (System.nanoTime() - check.start) / 1_000_000L;
+        meanRtt.updateAndGet(
+                bits -> {
+                    double mean = Double.longBitsToDouble(bits);
+                    return Double.doubleToLongBits(
+                            mean < 0 ? rttMs : mean + RTT_SMOOTHING * (rttMs - mean));
+                });
+        notify(() -> check.listener.onReachable(rttMs));
+    }
+
+    private void unreachable(Check check) {
+        unreachableTargets.incrementAndGet();
+        notify(check.listener::onUnreachable);
+    }
+
+    private static void notify(Runnable notification) {
+        try {
+            notification.run();
+        } catch (RuntimeException e) {
+            LOGGER.error("Exception in reachability listener: ", e);
+        }
+    }
+
+    private static void close(SocketChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close channel: ", e);
+            }
+        }
+    }
+
+    private static class Check {
+
+        private final ScanTarget scanTarget;
+
+        private final ReachabilityListener listener;
+
+        private long start;
+
+        private Check(ScanTarget scanTarget, ReachabilityListener listener) {
+            this.scanTarget = scanTarget;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.core;
+
+/**
+ * Bounds the number of scans a worker holds in memory, from receiving the scan job until the scan
+ * terminated. This covers running scans and scans waiting for a thread, so the memory of the worker
+ * does not depend on how many scan jobs the broker delivers. Scans deferred because of their
+ * destination are bounded separately and give up their admission while they are deferred. Admission
+ * can also be paused, e.g. under heap pressure.
+ */
+class ScanAdmission {
+
+    private final int capacity;
+
+    /** Guarded by this. */
+    private int admitted;
+
+    /** Guarded by this. */
+    private boolean paused;
+
+    /**
+     * @param capacity maximum number of admitted scans
+     */
+    ScanAdmission(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Admits a scan, waiting until capacity is available and admission is not paused.
+     *
+     * @param timeoutMs maximum time to wait, 0 to wait without limit
+     * @return false if no capacity became available within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized boolean admit(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (admitted >= capacity || paused) {
+            if (timeoutMs <= 0) {
+                wait();
+            } else {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+        }
+        admitted++;
+        return true;
+    }
+
+    /**
+     * Admits a scan without waiting, e.g. a deferred scan that was admitted before. The capacity
+     * may be exceeded by it.
+     */
+    synchronized void readmit() {
+        admitted++;
+    }
+
+    /** Frees the capacity of a terminated scan. */
+    synchronized void release() {
+        admitted--;
+        notifyAll();
+    }
+
+    synchronized void setPaused(boolean paused) {
+        this.paused = paused;
+        notifyAll();
+    }
+
+    synchronized int getAdmitted() {
+        return admitted;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+}
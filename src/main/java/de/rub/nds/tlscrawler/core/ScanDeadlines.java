@@ -0,0 +1,75 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the deadlines of all running scans. Registering a deadline only enqueues it on a single
+ * timer thread, no thread waits for an individual scan. Deadlines that are cancelled because the
+ * scan finished in time are removed from the timer queue immediately.
+ *
+ * <p>Expired deadlines are handled on a separate small pool, so a slow cancellation does not delay
+ * other deadlines. Expiries beyond its threads wait in its queue.
+ */
+class ScanDeadlines {
+
+    /** Number of threads that handle expired deadlines. */
+    private static final int EXPIRY_THREADS = 2;
+
+    private final ScheduledThreadPoolExecutor timer;
+
+    private final ExecutorService expiryExecutor;
+
+    ScanDeadlines() {
+        timer = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("scan-deadline-timer"));
+        timer.setRemoveOnCancelPolicy(true);
+        expiryExecutor =
+                Executors.newFixedThreadPool(
+                        EXPIRY_THREADS, daemonThreadFactory("scan-deadline-expiry"));
+    }
+
+    /**
+     * @param onExpiry run when the deadline is reached
+     * @param timeoutMs time until the deadline in ms
+     * @return handle to cancel the deadline, cancelling fails if the deadline already expired
+     */
+    Future<?> register(Runnable onExpiry, long timeoutMs) {
+        return timer.schedule(
+                () -> expiryExecutor.execute(onExpiry), timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return number of registered deadlines that did not expire yet
+     */
+    int size() {
+        return timer.getQueue().size();
+    }
+
+    /** Stops the timer, deadlines that did not expire yet are dropped. */
+    void shutdown() {
+        timer.shutdownNow();
+        expiryExecutor.shutdown();
+    }
+
+    private static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.core;
+
+import de.rub.nds.tlscrawler.data.ScanJob;
+import de.rub.nds.tlscrawler.scans.Scan;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs the scans of a worker and cancels scans that exceed their timeout. The deadline of a scan
+ * starts when the scan starts running.
+ */
+abstract class ScanExecutor {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final int scanTimeout;
+
+    /** Is informed about the outcome and the termination of every scan. */
+    interface ScanListener {
+
+        /**
+         * Called once a scan finished or timed out.
+         *
+         * @param durationMs duration of the scan, the timeout if it timed out
+         * @param timedOut whether the scan timed out
+         */
+        void scanFinished(long durationMs, boolean timedOut);
+
+        /**
+         * Called once the scan actually terminated, which can be later than its timeout.
+         *
+         * @param scan the terminated scan
+         */
+        void scanTerminated(Scan scan);
+    }
+
+    private final ScanListener scanListener;
+
+    private final ScanDeadlines scanDeadlines = new ScanDeadlines();
+
+    /** Submitted scans that did not start yet. */
+    private final Set<ScanTask> pendingTasks = ConcurrentHashMap.newKeySet();
+
+    private final Set<ScanTask> runningTasks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param scanTimeout timeout of a scan in ms, if the scan job does not have its own timeout
+     * @param scanListener is informed about each finished or timed out scan
+     */
+    ScanExecutor(int scanTimeout, ScanListener scanListener) {
+        this.scanTimeout = scanTimeout;
+        this.scanListener = scanListener;
+    }
+
+    abstract void submit(Scan scan);
+
+    /**
+     * @param limit maximum number of concurrently running scans
+     */
+    abstract void setConcurrencyLimit(int limit);
+
+    /**
+     * @return number of running scans
+     */
+    abstract int getActiveScans();
+
+    /**
+     * @return number of submitted scans that do not run yet
+     */
+    abstract int getQueuedScans();
+
+    /**
+     * Withdraws all submitted scans that did not start yet. They will not run anymore and are not
+     * reported to the scan listener.
+     *
+     * @return the withdrawn scans
+     */
+    List<Scan> withdrawPendingScans() {
+        List<Scan> withdrawn = new ArrayList<>();
+        for (ScanTask task : pendingTasks) {
+            if (task.withdraw()) {
+                withdrawn.add(task.scan);
+            }
+        }
+        return withdrawn;
+    }
+
+    /**
+     * Cancels the running scans that match the filter and interrupts their threads.
+     *
+     * @param filter selects the scans to cancel
+     * @return number of cancelled scans
+     */
+    int cancelRunningScans(Predicate<Scan> filter) {
+        int cancelled = 0;
+        for (ScanTask task : runningTasks) {
+            if (filter.test(task.scan)) {
+                task.scan.cancel(false);
+                task.cancel(true);
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /** Stops the deadlines of the scans, no scan is cancelled because of its timeout anymore. */
+    void shutdown() {
+        scanDeadlines.shutdown();
+    }
+
+    /**
+     * Creates the task for a submitted scan, it counts as pending until it is run.
+     *
+     * @param scan to run
+     * @return task that runs the scan and cancels it when its deadline is reached
+     */
+    protected FutureTask<Void> newScanTask(Scan scan) {
+        ScanTask task = new ScanTask(scan);
+        pendingTasks.add(task);
+        return task;
+    }
+
+    private long getScanTimeout(ScanJob scanJob) {
+        return scanJob.getScanTimeout() > 0 ? scanJob.getScanTimeout() : scanTimeout;
+    }
+
+    private class ScanTask extends FutureTask<Void> {
+
+        private final Scan scan;
+
+        /** Set once the task started or was withdrawn. */
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private ScanTask(Scan scan) {
+            super(scan, null);
+            this.scan = scan;
+        }
+
+        private boolean withdraw() {
+            if (claimed.compareAndSet(false, true)) {
+                pendingTasks.remove(this);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                // withdrawn
+                return;
+            }
+            pendingTasks.remove(this);
+            runningTasks.add(this);
+            long timeout = getScanTimeout(scan.getScanJob());
+            long start = System.currentTimeMillis();
+            Future<?> deadline = scanDeadlines.register(() -> expire(timeout), timeout);
+            try {
+                super.run();
+            } finally {
+                // fails if the deadline expired, the timeout was already reported then
+                if (deadline.cancel(false)) {
+                    scanListener.scanFinished(System.currentTimeMillis() - start, false);
+                }
+                runningTasks.remove(this);
+                scanListener.scanTerminated(scan);
+            }
+        }
+
+        private void expire(long timeout) {
+            scanListener.scanFinished(timeout, true);
+            if (isDone()) {
+                return;
+            }
+            LOGGER.info(
+                    "Trying to shutdown scan of '{}' because timeout reached",
+                    scan.getScanJob().getScanTarget());
+            scan.cancel(true);
+            cancel(true);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            LOGGER.error("Scan of '{}' failed with error ", scan.getScanJob().getScanTarget(), t);
+            super.setException(t);
+        }
+    }
+}
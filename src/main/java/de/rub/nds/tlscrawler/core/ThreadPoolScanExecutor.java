@@ -0,0 +1,55 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.core;
+
+import de.rub.nds.tlscrawler.scans.Scan;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** Runs each scan on a thread of a fixed thread pool. */
+class ThreadPoolScanExecutor extends ScanExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    ThreadPoolScanExecutor(int threadCount, int scanTimeout, ScanListener scanListener) {
+        super(scanTimeout, scanListener);
+        executor =
+                new ThreadPoolExecutor(
+                        threadCount, threadCount, 5, TimeUnit.MINUTES, new LinkedBlockingDeque<>());
+    }
+
+    @Override
+    void submit(Scan scan) {
+        executor.execute(newScanTask(scan));
+    }
+
+    /** Resizes the thread pool, surplus threads terminate once their current scan finished. */
+    @Override
+    synchronized void setConcurrencyLimit(int limit) {
+        // the core pool size must never exceed the maximum pool size
+        if (limit > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(limit);
+            executor.setCorePoolSize(limit);
+        } else {
+            executor.setCorePoolSize(limit);
+            executor.setMaximumPoolSize(limit);
+        }
+    }
+
+    @Override
+    int getActiveScans() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    int getQueuedScans() {
+        return executor.getQueue().size();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.core;
+
+import de.rub.nds.tlscrawler.scans.Scan;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs each scan on its own virtual thread. The number of concurrently running scans is limited by
+ * a semaphore instead of the number of platform threads. A scan holds its permit until it actually
+ * terminates, also if it was cancelled on timeout.
+ *
+ * <p>Virtual threads require Java 21. The executor is looked up reflectively, so the crawler still
+ * runs on older versions without this mode.
+ */
+class VirtualThreadScanExecutor extends ScanExecutor {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final ExecutorService executor;
+
+    private final ResizableSemaphore permits;
+
+    private int limit;
+
+    private final AtomicInteger activeScans = new AtomicInteger();
+
+    private final AtomicInteger queuedScans = new AtomicInteger();
+
+    private VirtualThreadScanExecutor(
+            ExecutorService executor,
+            int maxConcurrentScans,
+            int scanTimeout,
+            ScanListener scanListener) {
+        super(scanTimeout, scanListener);
+        this.executor = executor;
+        this.permits = new ResizableSemaphore(maxConcurrentScans);
+        this.limit = maxConcurrentScans;
+    }
+
+    /**
+     * @param maxConcurrentScans maximum number of concurrently running scans
+     * @param scanTimeout timeout of a scan in ms
+     * @param scanListener is informed about each finished or timed out scan
+     * @return the executor or null if virtual threads are not supported by the JVM
+     */
+    static VirtualThreadScanExecutor create(
+            int maxConcurrentScans, int scanTimeout, ScanListener scanListener) {
+        try {
+            ExecutorService executor =
+                    (ExecutorService)
+                            Executors.class
+                                    .getMethod("newVirtualThreadPerTaskExecutor")
+                                    .invoke(null);
+            return new VirtualThreadScanExecutor(
+                    executor, maxConcurrentScans, scanTimeout, scanListener);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.warn("Virtual threads are not supported by this JVM ({})", e.toString());
+            return null;
+        }
+    }
+
+    @Override
+    void submit(Scan scan) {
+        queuedScans.incrementAndGet();
+        Runnable scanTask = newScanTask(scan);
+        executor.execute(
+                () -> {
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        queuedScans.decrementAndGet();
+                        Thread.currentThread().interrupt();
+                        LOGGER.error(
+                                "Interrupted while waiting to run scan of '{}'",
+                                scan.getScanJob().getScanTarget());
+                        return;
+                    }
+                    queuedScans.decrementAndGet();
+                    activeScans.incrementAndGet();
+                    try {
+                        scanTask.run();
+                    } finally {
+                        activeScans.decrementAndGet();
+                        permits.release();
+                    }
+                });
+    }
+
+    /** Lowering the limit does not stop running scans, new scans wait until enough finished. */
+    @Override
+    synchronized void setConcurrencyLimit(int limit) {
+        if (limit > this.limit) {
+            permits.release(limit - this.limit);
+        } else if (limit < this.limit) {
+            permits.reducePermits(this.limit - limit);
+        }
+        this.limit = limit;
+    }
+
+    @Override
+    int getActiveScans() {
+        return activeScans.get();
+    }
+
+    @Override
+    int getQueuedScans() {
+        return queuedScans.get();
+    }
+
+    /** Semaphore whose number of permits can be reduced, also below zero. */
+    private static class ResizableSemaphore extends Semaphore {
+
+        private ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
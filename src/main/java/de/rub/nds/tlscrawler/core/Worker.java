@@ -9,29 +9,100 @@
 package de.rub.nds.tlscrawler.core;
 
 import de.rub.nds.tlscrawler.config.WorkerCommandConfig;
-import de.rub.nds.tlscrawler.orchestration.RabbitMqOrchestrationProvider;
+import de.rub.nds.tlscrawler.constant.Status;
+import de.rub.nds.tlscrawler.data.BulkScan;
+import de.rub.nds.tlscrawler.data.ScanConfig;
+import de.rub.nds.tlscrawler.data.ScanJob;
+import de.rub.nds.tlscrawler.orchestration.DeliveryTag;
+import de.rub.nds.tlscrawler.orchestration.IOrchestrationProvider;
 import de.rub.nds.tlscrawler.persistence.IPersistenceProvider;
+import de.rub.nds.tlscrawler.persistence.ScanResultWriter;
 import de.rub.nds.tlscrawler.scans.PingScan;
 import de.rub.nds.tlscrawler.scans.Scan;
+import de.rub.nds.tlscrawler.scans.SharedProbeExecutor;
 import de.rub.nds.tlscrawler.scans.TlsScan;
-import java.util.concurrent.*;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * Worker that subscribe to scan job queue, initializes thread pool and submits received scan jobs
- * to thread pool.
+ * to thread pool. Optionally the scans run on virtual threads instead.
  */
 public class Worker extends TlsCrawler {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
+    /** Interval in which draining checks whether all scans terminated. */
+    private static final long DRAIN_POLL_INTERVAL_MS = 100;
+
+    /** Number of bulk scans whose scan config is cached, the least recently used is evicted. */
+    private static final int MAX_CACHED_SCAN_CONFIGS = 64;
+
     private final int maxThreadCount;
-    private final int parallelProbeThreads;
+    private final int numberOfConsumers;
     private final int scanTimeout;
+    private final long prefetchAdjustInterval;
+
+    private final ScanExecutor scanExecutor;
+
+    /** Probe threads shared by all TLS scans. */
+    private final SharedProbeExecutor probeExecutor;
+
+    /** Writes the scan results, the scan jobs are acknowledged afterwards. */
+    private final ScanResultWriter resultWriter;
+
+    private final ScanAdmission scanAdmission;
+    private final long admissionTimeout;
+    private final PrefetchController prefetchController;
+    private final DestinationThrottle destinationThrottle;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final MemoryGovernor memoryGovernor;
+
+    /** Null if targets are scanned without checking their reachability first. */
+    private final ReachabilityChecker reachabilityChecker;
+
+    /** Set once the worker is draining, no further scans are started then. */
+    private volatile boolean draining;
+
+    /** Limit of concurrently running scans without a concurrency limiter. */
+    private volatile int fixedConcurrencyLimit;
+
+    private final long concurrencyAdjustInterval;
+    private final WorkerMetrics workerMetrics;
 
-    private final ThreadPoolExecutor executor;
-    private final ThreadPoolExecutor timeoutExecutor;
+    /** Informs the controllers about finished scans and releases their destination and capacity. */
+    private final ScanExecutor.ScanListener scanListener =
+            new ScanExecutor.ScanListener() {
+                @Override
+                public void scanFinished(long durationMs, boolean timedOut) {
+                    prefetchController.recordScanDuration(durationMs);
+                    if (concurrencyLimiter != null) {
+                        concurrencyLimiter.recordScan(durationMs, timedOut);
+                    }
+                }
+
+                @Override
+                public void scanTerminated(Scan scan) {
+                    if (destinationThrottle != null) {
+                        destinationThrottle.release(scan.getScanJob().getScanTarget());
+                    }
+                    scanAdmission.release();
+                }
+            };
+
+    /** Scan configs of the bulk scans, scan jobs only reference their scan config. */
+    private final Map<String, ScanConfig> scanConfigByBulkScanId =
+            Collections.synchronizedMap(
+                    new LinkedHashMap<>(16, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<String, ScanConfig> eldest) {
+                            return size() > MAX_CACHED_SCAN_CONFIGS;
+                        }
+                    });
 
     /**
      * TLS-Crawler constructor.
@@ -42,71 +113,445 @@ public class Worker extends TlsCrawler {
      */
     public Worker(
             WorkerCommandConfig commandConfig,
-            RabbitMqOrchestrationProvider orchestrationProvider,
+            IOrchestrationProvider orchestrationProvider,
             IPersistenceProvider persistenceProvider) {
         super(orchestrationProvider, persistenceProvider);
         this.maxThreadCount = commandConfig.getNumberOfThreads();
-        this.parallelProbeThreads = commandConfig.getParallelProbeThreads();
+        this.numberOfConsumers = commandConfig.getNumberOfConsumers();
         this.scanTimeout = commandConfig.getScanTimeout();
+        this.prefetchAdjustInterval = commandConfig.getPrefetchAdjustInterval();
+        this.concurrencyAdjustInterval = commandConfig.getConcurrencyAdjustInterval();
+        this.admissionTimeout = commandConfig.getAdmissionTimeout();
+
+        int maxQueuedScans = commandConfig.getMaxQueuedScans();
+        if (maxQueuedScans <= 0) {
+            maxQueuedScans = maxThreadCount;
+        }
+        scanAdmission = new ScanAdmission(maxThreadCount + maxQueuedScans);
+        int maxDeferredScans = commandConfig.getMaxDeferredScans();
+        if (maxDeferredScans <= 0) {
+            maxDeferredScans = maxThreadCount;
+        }
+        fixedConcurrencyLimit = maxThreadCount;
+        if (commandConfig.getHeapHighWatermark() > 0) {
+            memoryGovernor =
+                    new MemoryGovernor(
+                            commandConfig.getHeapHighWatermark(),
+                            commandConfig.getHeapLowWatermark(),
+                            new MemoryGovernor.PressureListener() {
+                                @Override
+                                public void onHeapPressure() {
+                                    scanAdmission.setPaused(true);
+                                    if (concurrencyLimiter != null) {
+                                        concurrencyLimiter.shrink();
+                                    } else {
+                                        setFixedConcurrencyLimit(Math.max(1, maxThreadCount / 2));
+                                    }
+                                }
+
+                                @Override
+                                public void onHeapRelief() {
+                                    scanAdmission.setPaused(false);
+                                    // the concurrency limiter grows again on its own
+                                    if (concurrencyLimiter == null) {
+                                        setFixedConcurrencyLimit(maxThreadCount);
+                                    }
+                                }
+                            });
+        } else {
+            memoryGovernor = null;
+        }
+
+        if (commandConfig.getMaxScansPerIp() > 0
+                || commandConfig.getMaxScansPerNetwork() > 0
+                || commandConfig.getMinScanStartInterval() > 0) {
+            destinationThrottle =
+                    new DestinationThrottle(
+                            commandConfig.getMaxScansPerIp(),
+                            commandConfig.getMaxScansPerNetwork(),
+                            commandConfig.getMinScanStartInterval(),
+                            maxDeferredScans);
+        } else {
+            destinationThrottle = null;
+        }
+        ReachabilityChecker checker = null;
+        if (commandConfig.isReachabilityCheck()) {
+            try {
+                checker =
+                        new ReachabilityChecker(
+                                commandConfig.getReachabilityTimeout(),
+                                commandConfig.getMaxReachabilityChecks());
+            } catch (IOException e) {
+                LOGGER.error(
+                        "Could not open selector, targets are not checked for reachability: ", e);
+            }
+        }
+        reachabilityChecker = checker;
+        if (commandConfig.isAdaptiveConcurrency()) {
+            // -numberOfThreads is the ceiling of the adaptive limit
+            concurrencyLimiter =
+                    new ConcurrencyLimiter(
+                            commandConfig.getMinConcurrency(),
+                            maxThreadCount,
+                            scanTimeout,
+                            this::setConcurrencyLimit,
+                            this::getActiveScans,
+                            this::getQueuedScans);
+        } else {
+            concurrencyLimiter = null;
+        }
+        prefetchController =
+                new PrefetchController(
+                        orchestrationProvider,
+                        this::getConcurrencyLimit,
+                        this::getActiveScans,
+                        this::getQueuedScans,
+                        this::getDeferredScans);
+        scanExecutor = createScanExecutor(commandConfig.isVirtualThreads());
+        int maxProbeThreads = commandConfig.getMaxProbeThreads();
+        if (maxProbeThreads <= 0) {
+            maxProbeThreads = maxThreadCount * commandConfig.getParallelProbeThreads();
+        }
+        probeExecutor =
+                new SharedProbeExecutor(maxProbeThreads, commandConfig.getParallelProbeThreads());
+        resultWriter =
+                new ScanResultWriter(
+                        persistenceProvider,
+                        commandConfig.getResultQueueSize(),
+                        commandConfig.getResultBatchSize(),
+                        commandConfig.getResultFlushInterval(),
+                        commandConfig.getResultWriterThreads());
+        workerMetrics =
+                new WorkerMetrics(
+                        prefetchController,
+                        this::getActiveScans,
+                        this::getQueuedScans,
+                        this::getConcurrencyLimit,
+                        probeExecutor::getActiveProbes,
+                        this::getDeferredScans,
+                        scanAdmission::getAdmitted,
+                        resultWriter::getPendingResults,
+                        reachabilityChecker,
+                        memoryGovernor);
+    }
+
+    private ScanExecutor createScanExecutor(boolean virtualThreads) {
+        if (virtualThreads) {
+            ScanExecutor virtualThreadScanExecutor =
+                    VirtualThreadScanExecutor.create(maxThreadCount, scanTimeout, scanListener);
+            if (virtualThreadScanExecutor != null) {
+                LOGGER.info("Running up to {} scans on virtual threads", maxThreadCount);
+                return virtualThreadScanExecutor;
+            }
+            LOGGER.warn("Falling back to a pool of {} platform threads", maxThreadCount);
+        }
+        return new ThreadPoolScanExecutor(maxThreadCount, scanTimeout, scanListener);
+    }
 
-        executor =
-                new ThreadPoolExecutor(
-                        maxThreadCount,
-                        maxThreadCount,
-                        5,
-                        TimeUnit.MINUTES,
-                        new LinkedBlockingDeque<>());
-        timeoutExecutor =
-                new ThreadPoolExecutor(
-                        maxThreadCount,
-                        maxThreadCount,
-                        5,
-                        TimeUnit.MINUTES,
-                        new LinkedBlockingDeque<>());
+    /**
+     * Waits until the worker has capacity for another scan. If no capacity becomes available in
+     * time, the scan job is requeued so that another worker can process it.
+     *
+     * @param scanJob the received scan job
+     * @param deliveryTag of the scan job
+     * @return true if the scan job was admitted
+     */
+    private boolean admit(ScanJob scanJob, DeliveryTag deliveryTag) {
+        try {
+            if (scanAdmission.admit(admissionTimeout)) {
+                return true;
+            }
+            LOGGER.warn(
+                    "No capacity for scan job of '{}' within {} ms, requeueing it",
+                    scanJob.getScanTarget(),
+                    admissionTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        orchestrationProvider.requeueScanJob(scanJob, deliveryTag);
+        return false;
+    }
+
+    /**
+     * Submits the scan to the scan executor, possibly deferred until its destination is not
+     * throttled anymore. A deferred scan gives up its admission until it starts. If too many scans
+     * are deferred already, the scan job is requeued for other workers.
+     *
+     * @param scan to submit
+     */
+    private void submitScan(Scan scan) {
+        if (destinationThrottle == null) {
+            startScan(scan);
+            return;
+        }
+        DestinationThrottle.Submission submission =
+                destinationThrottle.submit(
+                        scan,
+                        () -> {
+                            scanAdmission.readmit();
+                            startScan(scan);
+                        });
+        if (submission == DestinationThrottle.Submission.DEFERRED) {
+            scanAdmission.release();
+        } else if (submission == DestinationThrottle.Submission.REJECTED) {
+            // the scan did not acquire its destination
+            scan.requeue();
+            scanAdmission.release();
+        }
+    }
+
+    private void startScan(Scan scan) {
+        if (draining) {
+            requeueWithdrawn(scan);
+        } else if (reachabilityChecker != null && scan instanceof TlsScan) {
+            checkReachability((TlsScan) scan);
+        } else {
+            scanExecutor.submit(scan);
+        }
+    }
+
+    /**
+     * Submits the scan to the scan executor if its target is reachable. Otherwise the scan job is
+     * completed without a result.
+     *
+     * @param scan to check the target of
+     */
+    private void checkReachability(TlsScan scan) {
+        reachabilityChecker.check(
+                scan.getScanJob().getScanTarget(),
+                new ReachabilityChecker.ReachabilityListener() {
+                    @Override
+                    public void onReachable(long rttMs) {
+                        scan.setConnectRtt(rttMs);
+                        if (draining) {
+                            requeueWithdrawn(scan);
+                        } else {
+                            scanExecutor.submit(scan);
+                        }
+                    }
+
+                    @Override
+                    public void onUnreachable() {
+                        LOGGER.info(
+                                "'{}' is not reachable, not scanning it",
+                                scan.getScanJob().getScanTarget());
+                        scan.getScanJob().setStatus(Status.DoneNoResult);
+                        scan.cancel(false);
+                        scanListener.scanTerminated(scan);
+                    }
+
+                    @Override
+                    public void onWithdrawn() {
+                        requeueWithdrawn(scan);
+                    }
+                });
+    }
+
+    /** Requeues an admitted scan that will not run and frees its destination and capacity. */
+    private void requeueWithdrawn(Scan scan) {
+        scan.requeue();
+        scanListener.scanTerminated(scan);
+    }
+
+    /**
+     * Stops the worker gracefully. No further scan jobs are received and scan jobs that did not
+     * start yet, including those deferred because of their destination or waiting for their
+     * reachability check, are requeued immediately, so other workers can take them over. Running
+     * scans may finish and their results may be written within the grace period, afterwards their
+     * scan jobs are requeued as well and the scans are interrupted. Finally the connection is
+     * closed.
+     *
+     * @param gracePeriodMs maximum time to wait for running scans
+     */
+    public void drain(long gracePeriodMs) {
+        LOGGER.info("Draining worker, waiting up to {} ms for running scans", gracePeriodMs);
+        draining = true;
+        orchestrationProvider.cancelScanJobConsumers();
+        prefetchController.stop();
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.stop();
+        }
+        if (memoryGovernor != null) {
+            memoryGovernor.stop();
+        }
+        long deadline = System.currentTimeMillis() + gracePeriodMs;
+        try {
+            do {
+                // also catches scans that were submitted while draining started
+                scanExecutor.withdrawPendingScans().forEach(this::requeueWithdrawn);
+                if (destinationThrottle != null) {
+                    // deferred scans neither hold admission nor their destination
+                    destinationThrottle.withdrawDeferredScans().forEach(Scan::requeue);
+                }
+                if (reachabilityChecker != null) {
+                    reachabilityChecker.withdrawChecks();
+                }
+                if (scanAdmission.getAdmitted() == 0
+                        && getDeferredScans() == 0
+                        && resultWriter.getPendingResults() == 0) {
+                    break;
+                }
+                Thread.sleep(DRAIN_POLL_INTERVAL_MS);
+            } while (System.currentTimeMillis() < deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int requeued = scanExecutor.cancelRunningScans(Scan::requeue);
+        if (requeued > 0) {
+            LOGGER.info(
+                    "Requeued {} scan jobs that did not finish within the grace period", requeued);
+        }
+        scanExecutor.shutdown();
+        if (reachabilityChecker != null) {
+            reachabilityChecker.stop();
+        }
+        // results still pending are not acknowledged, their scan jobs are delivered again
+        resultWriter.close(DRAIN_POLL_INTERVAL_MS);
+        orchestrationProvider.closeConnection();
     }
 
     public void start() {
+        if (memoryGovernor != null) {
+            memoryGovernor.start();
+        }
+        if (reachabilityChecker != null) {
+            reachabilityChecker.start();
+        }
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.start(concurrencyAdjustInterval);
+        }
         this.orchestrationProvider.registerScanJobConsumer(
                 ((scanJob, deliveryTag) -> {
+                    if (draining) {
+                        // delivered before the consumer was cancelled
+                        orchestrationProvider.requeueScanJob(scanJob, deliveryTag);
+                        return;
+                    }
+                    if (!resolveScanConfig(scanJob, deliveryTag)) {
+                        return;
+                    }
+                    if (!admit(scanJob, deliveryTag)) {
+                        return;
+                    }
                     switch (scanJob.getScanConfig().getScanType()) {
                         case TLS:
-                            this.submitWithTimeout(
+                            submitScan(
                                     new TlsScan(
                                             scanJob,
                                             deliveryTag,
                                             orchestrationProvider,
-                                            persistenceProvider,
-                                            parallelProbeThreads));
+                                            resultWriter,
+                                            probeExecutor));
                             break;
                         case PING:
-                            this.submitWithTimeout(
+                            submitScan(
                                     new PingScan(
                                             scanJob,
                                             deliveryTag,
                                             orchestrationProvider,
-                                            persistenceProvider));
+                                            resultWriter));
                             break;
                     }
                 }),
-                this.maxThreadCount);
-    }
-
-    private void submitWithTimeout(Scan scan) {
-        timeoutExecutor.submit(
-                () -> {
-                    Future<?> future = null;
-                    try {
-                        future = executor.submit(scan);
-                        future.get(this.scanTimeout, TimeUnit.MILLISECONDS);
-                    } catch (InterruptedException | ExecutionException e) {
-                        LOGGER.error("Could not submit a scan to the worker thread with error ", e);
-                    } catch (TimeoutException e) {
-                        LOGGER.info(
-                                "Trying to shutdown scan of '{}' because timeout reached",
-                                scan.getScanJob().getScanTarget());
-                        scan.cancel(true);
-                        future.cancel(true);
+                this.numberOfConsumers,
+                prefetchController.getPrefetchCount());
+        if (prefetchAdjustInterval > 0) {
+            prefetchController.start(prefetchAdjustInterval);
+        }
+        workerMetrics.register();
+    }
+
+    /**
+     * @return maximum number of concurrently running scans
+     */
+    private int getConcurrencyLimit() {
+        return concurrencyLimiter != null ? concurrencyLimiter.getLimit() : fixedConcurrencyLimit;
+    }
+
+    private void setFixedConcurrencyLimit(int limit) {
+        fixedConcurrencyLimit = limit;
+        setConcurrencyLimit(limit);
+    }
+
+    private void setConcurrencyLimit(int limit) {
+        scanExecutor.setConcurrencyLimit(limit);
+    }
+
+    /**
+     * @return number of received scans that wait for their destination
+     */
+    private int getDeferredScans() {
+        return destinationThrottle != null ? destinationThrottle.getDeferredScans() : 0;
+    }
+
+    private int getActiveScans() {
+        return scanExecutor.getActiveScans();
+    }
+
+    /**
+     * @return number of received scans that do not run yet
+     */
+    private int getQueuedScans() {
+        return scanExecutor.getQueuedScans();
+    }
+
+    /**
+     * Sets the scan config of the bulk scan on the scan job if it was not transmitted with the scan
+     * job itself. If the bulk scan cannot be read, the scan job is requeued. If it does not exist,
+     * the scan job is retried later while it has attempts left and dead-lettered otherwise. A scan
+     * job with a single attempt is reported as done instead.
+     *
+     * @param scanJob for which the scan config should be resolved
+     * @param deliveryTag of the scan job
+     * @return true if the scan job has a scan config afterwards
+     */
+    private boolean resolveScanConfig(ScanJob scanJob, DeliveryTag deliveryTag) {
+        if (scanJob.getScanConfig() != null) {
+            return true;
+        }
+        ScanConfig scanConfig = scanConfigByBulkScanId.get(scanJob.getBulkScanId());
+        if (scanConfig == null) {
+            // looked up outside of the map, so the lookup does not block other bulk scans
+            BulkScan bulkScan;
+            try {
+                bulkScan =
+                        persistenceProvider.getBulkScan(
+                                scanJob.getDbName(), scanJob.getBulkScanId());
+            } catch (RuntimeException e) {
+                LOGGER.error(
+                        "Could not read BulkScan '{}', requeueing scan job for '{}': ",
+                        scanJob.getBulkScanId(),
+                        scanJob.getScanTarget(),
+                        e);
+                orchestrationProvider.requeueScanJob(scanJob, deliveryTag);
+                return false;
+            }
+            if (bulkScan == null || bulkScan.getScanConfig() == null) {
+                LOGGER.error(
+                        "Could not find BulkScan '{}' of scan job for '{}' (attempt {} of {})",
+                        scanJob.getBulkScanId(),
+                        scanJob.getScanTarget(),
+                        scanJob.getAttempt(),
+                        scanJob.getMaxAttempts());
+                scanJob.setStatus(Status.Error);
+                if (scanJob.getAttempt() < scanJob.getMaxAttempts()) {
+                    orchestrationProvider.retryScanJob(scanJob, deliveryTag);
+                } else if (scanJob.getMaxAttempts() > 1) {
+                    orchestrationProvider.deadLetterScanJob(scanJob, deliveryTag);
+                } else {
+                    if (scanJob.isMonitored()) {
+                        orchestrationProvider.notifyOfDoneScanJob(scanJob, deliveryTag);
                     }
-                });
+                    orchestrationProvider.sendAck(deliveryTag);
+                }
+                return false;
+            }
+            ScanConfig existing =
+                    scanConfigByBulkScanId.putIfAbsent(
+                            scanJob.getBulkScanId(), bulkScan.getScanConfig());
+            scanConfig = existing != null ? existing : bulkScan.getScanConfig();
+        }
+        scanJob.setScanConfig(scanConfig);
+        return true;
     }
 }
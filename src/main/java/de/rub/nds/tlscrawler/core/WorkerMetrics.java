@@ -0,0 +1,144 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/** JMX view on the state of a worker. */
+public class WorkerMetrics implements WorkerMetricsMXBean {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    public static final String OBJECT_NAME = "de.rub.nds.tlscrawler:type=Worker";
+
+    private final PrefetchController prefetchController;
+
+    private final IntSupplier activeScans;
+
+    private final IntSupplier queuedScans;
+
+    private final IntSupplier concurrencyLimit;
+
+    private final IntSupplier activeProbes;
+
+    private final IntSupplier deferredScans;
+
+    private final IntSupplier admittedScans;
+
+    private final IntSupplier pendingResults;
+
+    /** Null if targets are not checked for reachability. */
+    private final ReachabilityChecker reachabilityChecker;
+
+    /** Null if the heap is not monitored. */
+    private final MemoryGovernor memoryGovernor;
+
+    WorkerMetrics(
+            PrefetchController prefetchController,
+            IntSupplier activeScans,
+            IntSupplier queuedScans,
+            IntSupplier concurrencyLimit,
+            IntSupplier activeProbes,
+            IntSupplier deferredScans,
+            IntSupplier admittedScans,
+            IntSupplier pendingResults,
+            ReachabilityChecker reachabilityChecker,
+            MemoryGovernor memoryGovernor) {
+        this.prefetchController = prefetchController;
+        this.activeScans = activeScans;
+        this.queuedScans = queuedScans;
+        this.concurrencyLimit = concurrencyLimit;
+        this.activeProbes = activeProbes;
+        this.deferredScans = deferredScans;
+        this.admittedScans = admittedScans;
+        this.pendingResults = pendingResults;
+        this.reachabilityChecker = reachabilityChecker;
+        this.memoryGovernor = memoryGovernor;
+    }
+
+    /** Registers the metrics at the platform MBean server. */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            LOGGER.warn("Could not register worker metrics: ", e);
+        }
+    }
+
+    @Override
+    public int getPrefetchCount() {
+        return prefetchController.getPrefetchCount();
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return concurrencyLimit.getAsInt();
+    }
+
+    @Override
+    public int getActiveScans() {
+        return activeScans.getAsInt();
+    }
+
+    @Override
+    public int getQueuedScans() {
+        return queuedScans.getAsInt();
+    }
+
+    @Override
+    public int getActiveProbes() {
+        return activeProbes.getAsInt();
+    }
+
+    @Override
+    public int getDeferredScans() {
+        return deferredScans.getAsInt();
+    }
+
+    @Override
+    public int getAdmittedScans() {
+        return admittedScans.getAsInt();
+    }
+
+    @Override
+    public int getPendingResults() {
+        return pendingResults.getAsInt();
+    }
+
+    @Override
+    public int getUnreachableTargets() {
+        return reachabilityChecker != null ? reachabilityChecker.getUnreachableTargets() : 0;
+    }
+
+    @Override
+    public long getMeanConnectRtt() {
+        return reachabilityChecker != null ? reachabilityChecker.getMeanRtt() : -1;
+    }
+
+    @Override
+    public boolean isUnderHeapPressure() {
+        return memoryGovernor != null && memoryGovernor.isUnderPressure();
+    }
+
+    @Override
+    public long getHeapPressureEvents() {
+        return memoryGovernor != null ? memoryGovernor.getPressureEvents() : 0;
+    }
+
+    @Override
+    public long getMeanScanDuration() {
+        return prefetchController.getMeanScanDuration();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.core;
+
+/** Metrics of a worker, exposed via JMX as {@value WorkerMetrics#OBJECT_NAME}. */
+public interface WorkerMetricsMXBean {
+
+    /**
+     * @return maximum number of scan jobs that are received but not yet acknowledged
+     */
+    int getPrefetchCount();
+
+    /**
+     * @return maximum number of concurrently running scans
+     */
+    int getConcurrencyLimit();
+
+    /**
+     * @return number of running scans
+     */
+    int getActiveScans();
+
+    /**
+     * @return number of received scans that wait for a free thread
+     */
+    int getQueuedScans();
+
+    /**
+     * @return number of running probe tasks of all scans
+     */
+    int getActiveProbes();
+
+    /**
+     * @return number of received scans that wait because their destination is throttled
+     */
+    int getDeferredScans();
+
+    /**
+     * @return number of received scans that did not terminate yet, bounded by the capacity
+     */
+    int getAdmittedScans();
+
+    /**
+     * @return number of scan results that are not written yet
+     */
+    int getPendingResults();
+
+    /**
+     * @return number of targets that did not accept a connection before their scan
+     */
+    int getUnreachableTargets();
+
+    /**
+     * @return moving average of the round trip time of reachability checks in milliseconds, -1 if
+     *     unknown
+     */
+    long getMeanConnectRtt();
+
+    /**
+     * @return whether admission is paused because of heap pressure
+     */
+    boolean isUnderHeapPressure();
+
+    /**
+     * @return number of times the worker came under heap pressure
+     */
+    long getHeapPressureEvents();
+
+    /**
+     * @return moving average of the scan duration in milliseconds
+     */
+    long getMeanScanDuration();
+}
@@ -16,11 +16,23 @@ import de.rub.nds.tlscrawler.data.ScanConfig;
 import de.rub.nds.tlscrawler.data.ScanJob;
 import de.rub.nds.tlscrawler.data.ScanTarget;
 import de.rub.nds.tlscrawler.denylist.IDenylistProvider;
-import de.rub.nds.tlscrawler.orchestration.RabbitMqOrchestrationProvider;
+import de.rub.nds.tlscrawler.dns.DnsResolver;
+import de.rub.nds.tlscrawler.orchestration.IOrchestrationProvider;
+import de.rub.nds.tlscrawler.orchestration.IScanJobPublisher;
 import de.rub.nds.tlscrawler.persistence.IPersistenceProvider;
 import de.rub.nds.tlscrawler.targetlist.ITargetListProvider;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.quartz.Job;
@@ -32,13 +44,16 @@ public class PublishBulkScanJob implements Job {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
+    /** Number of targets per resolver thread that may wait for a thread. */
+    private static final int PENDING_TARGETS_PER_THREAD = 4;
+
     public void execute(JobExecutionContext context) throws JobExecutionException {
         try {
             JobDataMap data = context.getMergedJobDataMap();
 
             ControllerCommandConfig controllerConfig = (ControllerCommandConfig) data.get("config");
-            RabbitMqOrchestrationProvider orchestrationProvider =
-                    (RabbitMqOrchestrationProvider) data.get("orchestrationProvider");
+            IOrchestrationProvider orchestrationProvider =
+                    (IOrchestrationProvider) data.get("orchestrationProvider");
             IPersistenceProvider persistenceProvider =
                     (IPersistenceProvider) data.get("persistenceProvider");
             ITargetListProvider targetListProvider =
@@ -65,9 +80,6 @@ public class PublishBulkScanJob implements Job {
                             controllerConfig.isMonitored(),
                             controllerConfig.getNotifyUrl());
 
-            List<String> targetStringList = targetListProvider.getTargetList();
-            bulkScan.setTargetsGiven(targetStringList.size());
-
             persistenceProvider.insertBulkScan(bulkScan);
             LOGGER.info("Persisted BulkScan with id: {}", bulkScan.get_id());
 
@@ -78,36 +90,49 @@ public class PublishBulkScanJob implements Job {
             // create and submit scan jobs for valid hosts
             LOGGER.info(
                     "Filtering out denylisted hosts and hosts where the domain can not be resolved.");
-            long submittedJobs =
-                    targetStringList.parallelStream()
-                            .map(
-                                    targetString -> {
-                                        ScanTarget target =
-                                                ScanTarget.fromTargetString(
-                                                        targetString,
-                                                        controllerConfig.getPort(),
-                                                        denylistProvider);
-                                        if (target != null) {
-                                            orchestrationProvider.submitScanJob(
-                                                    new ScanJob(
-                                                            target,
-                                                            scanConfig,
-                                                            bulkScan.get_id(),
-                                                            bulkScan.isMonitored(),
-                                                            bulkScan.getName(),
-                                                            bulkScan.getCollectionName(),
-                                                            Status.Ready));
-                                        }
-                                        return target;
-                                    })
-                            .filter(Objects::nonNull)
-                            .count();
+            IScanJobPublisher publisher =
+                    orchestrationProvider.createScanJobPublisher(
+                            controllerConfig.getPublishBatchSize(),
+                            controllerConfig.getMaxUnconfirmedPublishes());
+            long createdJobs;
+            try (Stream<String> targetStrings = targetListProvider.getTargetStream()) {
+                createdJobs =
+                        publishScanJobs(
+                                targetStrings,
+                                controllerConfig,
+                                scanConfig,
+                                bulkScan,
+                                denylistProvider,
+                                publisher);
+            }
+            List<ScanJob> failedJobs = publisher.finish();
+            for (ScanJob failedJob : failedJobs) {
+                LOGGER.warn("Could not publish scan job for '{}'", failedJob.getScanTarget());
+            }
+            if (!failedJobs.isEmpty()) {
+                LOGGER.error(
+                        "{} of {} scan jobs could not be published to RabbitMq",
+                        failedJobs.size(),
+                        createdJobs);
+            }
+            // scan jobs without confirm may have been delivered, so they are expected to finish
+            long submittedJobs = createdJobs - failedJobs.size();
+            if (publisher.getUnconfirmedScanJobs() > 0) {
+                LOGGER.warn(
+                        "{} scan jobs were not confirmed by RabbitMq, the bulk scan may not finish if they were lost",
+                        publisher.getUnconfirmedScanJobs());
+            }
 
             bulkScan.setScanJobsPublished((int) submittedJobs);
             persistenceProvider.updateBulkScan(bulkScan);
 
-            if (controllerConfig.isMonitored() && submittedJobs == 0) {
-                progressMonitor.stopMonitoringAndFinalizeBulkScan(bulkScan.get_id());
+            if (controllerConfig.isMonitored()) {
+                if (submittedJobs == 0) {
+                    progressMonitor.stopMonitoringAndFinalizeBulkScan(bulkScan.get_id());
+                } else {
+                    // scan jobs may have finished while the target list was still read
+                    progressMonitor.checkBulkScanFinished(bulkScan.get_id());
+                }
             }
             LOGGER.info("Submitted {} scan jobs to RabbitMq", submittedJobs);
         } catch (Exception e) {
@@ -117,4 +142,214 @@ public class PublishBulkScanJob implements Job {
             throw e2;
         }
     }
+
+    /**
+     * Reads the targets one by one, resolves them and publishes their scan jobs from resolver
+     * threads. Hostnames are resolved asynchronously by a {@link DnsResolver} unless it is
+     * disabled. Only a bounded number of targets is pending at once, so memory does not depend on
+     * the length of the target list.
+     *
+     * @return number of created scan jobs
+     */
+    private long publishScanJobs(
+            Stream<String> targetStrings,
+            ControllerCommandConfig controllerConfig,
+            ScanConfig scanConfig,
+            BulkScan bulkScan,
+            IDenylistProvider denylistProvider,
+            IScanJobPublisher publisher)
+            throws InterruptedException {
+        int resolverThreads = controllerConfig.getResolverThreads();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService resolverExecutor =
+                Executors.newFixedThreadPool(
+                        resolverThreads,
+                        runnable -> {
+                            Thread thread =
+                                    new Thread(
+                                            runnable,
+                                            "target-resolver-" + threadNumber.getAndIncrement());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        DnsResolver dnsResolver = createDnsResolver(controllerConfig);
+        int maxPendingTargets = resolverThreads * PENDING_TARGETS_PER_THREAD;
+        if (dnsResolver != null) {
+            maxPendingTargets += controllerConfig.getDnsMaxInFlight();
+        }
+        Semaphore pendingTargets = new Semaphore(maxPendingTargets);
+        AtomicLong createdJobs = new AtomicLong();
+        AtomicInteger publishIds = new AtomicInteger();
+        Consumer<ScanTarget> publish =
+                target -> {
+                    try {
+                        ScanJob scanJob =
+                                new ScanJob(
+                                        target,
+                                        scanConfig,
+                                        bulkScan.get_id(),
+                                        bulkScan.isMonitored(),
+                                        bulkScan.getName(),
+                                        bulkScan.getCollectionName(),
+                                        Status.Ready);
+                        scanJob.setMaxAttempts(controllerConfig.getMaxScanAttempts());
+                        scanJob.setScanTimeout(controllerConfig.getScanJobTimeout());
+                        scanJob.setPublishId(publishIds.incrementAndGet());
+                        publisher.publish(scanJob);
+                        createdJobs.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Could not publish scan job for {}: ", target, e);
+                    } finally {
+                        pendingTargets.release();
+                    }
+                };
+        int targetsGiven = 0;
+        try {
+            Iterator<String> iterator = targetStrings.iterator();
+            while (iterator.hasNext()) {
+                String targetString = iterator.next();
+                targetsGiven++;
+                pendingTargets.acquire();
+                if (dnsResolver == null) {
+                    resolverExecutor.execute(
+                            () -> {
+                                ScanTarget target;
+                                try {
+                                    target =
+                                            ScanTarget.fromTargetString(
+                                                    targetString,
+                                                    controllerConfig.getPort(),
+                                                    denylistProvider);
+                                } catch (RuntimeException e) {
+                                    target = null;
+                                    LOGGER.error("Could not parse target {}: ", targetString, e);
+                                }
+                                if (target != null) {
+                                    publish.accept(target);
+                                } else {
+                                    pendingTargets.release();
+                                }
+                            });
+                } else {
+                    resolveAndPublish(
+                            targetString,
+                            controllerConfig.getPort(),
+                            dnsResolver,
+                            denylistProvider,
+                            resolverExecutor,
+                            publish,
+                            pendingTargets::release);
+                }
+            }
+        } finally {
+            // resolved targets are published on the executor, so it must not shut down before
+            pendingTargets.acquire(maxPendingTargets);
+            resolverExecutor.shutdown();
+            resolverExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            if (dnsResolver != null) {
+                dnsResolver.close();
+                LOGGER.info(
+                        "Resolved {} hostnames, {} could not be resolved, {} cache hits",
+                        dnsResolver.getResolvedNames(),
+                        dnsResolver.getFailedNames(),
+                        dnsResolver.getCacheHits());
+            }
+        }
+        bulkScan.setTargetsGiven(targetsGiven);
+        LOGGER.info("Read {} hosts", targetsGiven);
+        return createdJobs.get();
+    }
+
+    /**
+     * Parses the target and resolves its hostname asynchronously, then publishes it on the
+     * executor.
+     *
+     * @param skip is called instead of publish if the target is invalid, cannot be resolved or is
+     *     denylisted
+     */
+    private static void resolveAndPublish(
+            String targetString,
+            int defaultPort,
+            DnsResolver dnsResolver,
+            IDenylistProvider denylistProvider,
+            ExecutorService executor,
+            Consumer<ScanTarget> publish,
+            Runnable skip) {
+        ScanTarget target = ScanTarget.parseTargetString(targetString, defaultPort);
+        if (target == null) {
+            LOGGER.error("Target {} is not valid.", targetString);
+            skip.run();
+            return;
+        }
+        if (target.getIp() != null) {
+            if (target.checkDenylist(denylistProvider)) {
+                skip.run();
+            } else {
+                executor.execute(() -> publish.accept(target));
+            }
+            return;
+        }
+        // continued on the executor, the resolver thread must not block on publishing
+        dnsResolver
+                .resolve(target.getHostname())
+                .whenCompleteAsync(
+                        (ip, error) -> {
+                            // publish releases the target itself, in all other cases it is skipped
+                            boolean published = false;
+                            try {
+                                if (error != null) {
+                                    LOGGER.error(
+                                            "Host {} is unknown or can not be reached with error {}.",
+                                            target.getHostname(),
+                                            error);
+                                    return;
+                                }
+                                target.setIp(ip);
+                                if (!target.checkDenylist(denylistProvider)) {
+                                    published = true;
+                                    publish.accept(target);
+                                }
+                            } finally {
+                                if (!published) {
+                                    skip.run();
+                                }
+                            }
+                        },
+                        executor);
+    }
+
+    /**
+     * @return the resolver for the targets, null if they are resolved by the blocking resolver of
+     *     the JVM
+     */
+    private static DnsResolver createDnsResolver(ControllerCommandConfig controllerConfig) {
+        if (controllerConfig.getDnsMaxInFlight() <= 0) {
+            return null;
+        }
+        InetSocketAddress nameServer;
+        if (controllerConfig.getDnsServer() != null) {
+            try {
+                nameServer = DnsResolver.parseNameServer(controllerConfig.getDnsServer());
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("{}, using the blocking resolver of the JVM", e.getMessage());
+                return null;
+            }
+        } else {
+            nameServer = DnsResolver.getSystemNameServer();
+        }
+        if (nameServer == null) {
+            LOGGER.warn("No name server configured, using the blocking resolver of the JVM");
+            return null;
+        }
+        try {
+            LOGGER.info("Resolving targets with name server {}", nameServer);
+            return new DnsResolver(
+                    nameServer,
+                    controllerConfig.getDnsMaxInFlight(),
+                    controllerConfig.getDnsTimeout());
+        } catch (IOException e) {
+            LOGGER.error("Could not open DNS socket, using the blocking resolver of the JVM: ", e);
+            return null;
+        }
+    }
 }
@@ -42,6 +42,8 @@ public class BulkScan implements Serializable {
 
     private int resultsWritten;
 
+    private int scanJobsDeadLettered;
+
     private String notifyUrl;
 
     private String scannerVersion;
@@ -120,6 +122,10 @@ public class BulkScan implements Serializable {
         return this.resultsWritten;
     }
 
+    public int getScanJobsDeadLettered() {
+        return scanJobsDeadLettered;
+    }
+
     public String getNotifyUrl() {
         return this.notifyUrl;
     }
@@ -181,6 +187,10 @@ public class BulkScan implements Serializable {
         this.resultsWritten = resultsWritten;
     }
 
+    public void setScanJobsDeadLettered(int scanJobsDeadLettered) {
+        this.scanJobsDeadLettered = scanJobsDeadLettered;
+    }
+
     public void setNotifyUrl(String notifyUrl) {
         this.notifyUrl = notifyUrl;
     }
@@ -8,6 +8,7 @@
  */
 package de.rub.nds.tlscrawler.data;
 
+import java.util.BitSet;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class BulkScanJobDetails {
@@ -20,11 +21,17 @@ public class BulkScanJobDetails {
 
     private AtomicInteger resultsWritten;
 
+    private AtomicInteger scanJobsDeadLettered;
+
+    /** Publish ids of the done scan jobs. */
+    private final BitSet donePublishIds = new BitSet();
+
     public BulkScanJobDetails(BulkScan bulkScan) {
         this.bulkScan = bulkScan;
         this.doneScanJobs = new AtomicInteger(0);
         this.scanTimeouts = new AtomicInteger(0);
         this.resultsWritten = new AtomicInteger(0);
+        this.scanJobsDeadLettered = new AtomicInteger(0);
     }
 
     public BulkScan getBulkScan() {
@@ -42,4 +49,22 @@ public class BulkScanJobDetails {
     public AtomicInteger getResultsWritten() {
         return resultsWritten;
     }
+
+    public AtomicInteger getScanJobsDeadLettered() {
+        return scanJobsDeadLettered;
+    }
+
+    /**
+     * Marks the scan job with the publish id as done.
+     *
+     * @param publishId of the scan job
+     * @return false if the scan job was already done, e.g. because it was published twice
+     */
+    public synchronized boolean markDone(int publishId) {
+        if (donePublishIds.get(publishId)) {
+            return false;
+        }
+        donePublishIds.set(publishId);
+        return true;
+    }
 }
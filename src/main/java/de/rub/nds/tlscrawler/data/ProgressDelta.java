@@ -0,0 +1,168 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.data;
+
+import de.rub.nds.tlscrawler.constant.Status;
+import java.io.Serializable;
+
+/**
+ * Scan jobs of a bulk scan that were completed by a worker since its last progress notification.
+ * Scan jobs with a publish id are listed with their outcome, so the controller counts a scan job
+ * that was published or delivered twice only once. Scan jobs without publish id, e.g. of older
+ * controllers, are only counted.
+ */
+public class ProgressDelta implements Serializable {
+
+    /** Outcome flag of a scan job that timed out. */
+    public static final byte TIMEOUT = 1;
+
+    /** Outcome flag of a scan job whose result was written. */
+    public static final byte RESULT_WRITTEN = 2;
+
+    /** Outcome flag of a scan job that was moved to the dead letter queue. */
+    public static final byte DEAD_LETTERED = 4;
+
+    private static final int[] NO_PUBLISH_IDS = new int[0];
+
+    private static final byte[] NO_OUTCOMES = new byte[0];
+
+    private final String bulkScanId;
+
+    private final int doneScanJobs;
+
+    private final int scanTimeouts;
+
+    private final int resultsWritten;
+
+    /** Scan jobs that were moved to the dead letter queue, they are also counted as done. */
+    private final int deadLettered;
+
+    /** Publish ids of done scan jobs, they are not included in the counts. */
+    private final int[] publishIds;
+
+    /** Outcome flags of the scan jobs of the publish ids at the same index. */
+    private final byte[] outcomes;
+
+    public ProgressDelta(
+            String bulkScanId,
+            int doneScanJobs,
+            int scanTimeouts,
+            int resultsWritten,
+            int deadLettered) {
+        this(
+                bulkScanId,
+                doneScanJobs,
+                scanTimeouts,
+                resultsWritten,
+                deadLettered,
+                NO_PUBLISH_IDS,
+                NO_OUTCOMES);
+    }
+
+    public ProgressDelta(
+            String bulkScanId,
+            int doneScanJobs,
+            int scanTimeouts,
+            int resultsWritten,
+            int deadLettered,
+            int[] publishIds,
+            byte[] outcomes) {
+        if (publishIds.length != outcomes.length) {
+            throw new IllegalArgumentException("Each publish id needs exactly one outcome");
+        }
+        this.bulkScanId = bulkScanId;
+        this.doneScanJobs = doneScanJobs;
+        this.scanTimeouts = scanTimeouts;
+        this.resultsWritten = resultsWritten;
+        this.deadLettered = deadLettered;
+        this.publishIds = publishIds;
+        this.outcomes = outcomes;
+    }
+
+    /**
+     * @param scanJob that is done
+     * @return the progress delta of this single scan job
+     */
+    public static ProgressDelta of(ScanJob scanJob) {
+        return of(scanJob, false);
+    }
+
+    /**
+     * @param scanJob that is done
+     * @param deadLettered whether the scan job was moved to the dead letter queue
+     * @return the progress delta of this single scan job
+     */
+    public static ProgressDelta of(ScanJob scanJob, boolean deadLettered) {
+        boolean timeout = scanJob.getStatus() == Status.Timeout;
+        boolean resultWritten = scanJob.getStatus() == Status.DoneResultWritten;
+        if (scanJob.getPublishId() > 0) {
+            byte outcome =
+                    (byte)
+                            ((timeout ? TIMEOUT : 0)
+                                    | (resultWritten ? RESULT_WRITTEN : 0)
+                                    | (deadLettered ? DEAD_LETTERED : 0));
+            return new ProgressDelta(
+                    scanJob.getBulkScanId(),
+                    0,
+                    0,
+                    0,
+                    0,
+                    new int[] {scanJob.getPublishId()},
+                    new byte[] {outcome});
+        }
+        return new ProgressDelta(
+                scanJob.getBulkScanId(),
+                1,
+                timeout ? 1 : 0,
+                resultWritten ? 1 : 0,
+                deadLettered ? 1 : 0);
+    }
+
+    public String getBulkScanId() {
+        return bulkScanId;
+    }
+
+    /**
+     * @return number of done scan jobs without publish id
+     */
+    public int getDoneScanJobs() {
+        return doneScanJobs;
+    }
+
+    public int getScanTimeouts() {
+        return scanTimeouts;
+    }
+
+    public int getResultsWritten() {
+        return resultsWritten;
+    }
+
+    public int getDeadLettered() {
+        return deadLettered;
+    }
+
+    public int[] getPublishIds() {
+        return publishIds;
+    }
+
+    public byte[] getOutcomes() {
+        return outcomes;
+    }
+
+    /**
+     * @return whether the delta neither counts nor lists a scan job
+     */
+    public boolean isEmpty() {
+        return doneScanJobs == 0
+                && scanTimeouts == 0
+                && resultsWritten == 0
+                && deadLettered == 0
+                && publishIds.length == 0;
+    }
+}
@@ -9,10 +9,15 @@
 package de.rub.nds.tlscrawler.data;
 
 import de.rub.nds.tlscrawler.constant.Status;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 public class ScanJob implements Serializable {
 
+    /** Value of the builds before attempts were added, so legacy messages stay compatible. */
+    private static final long serialVersionUID = 576961008502345109L;
+
     private ScanTarget scanTarget;
 
     private ScanConfig scanConfig;
@@ -27,6 +32,20 @@ public class ScanJob implements Serializable {
 
     private Status status;
 
+    /** Number of this attempt to scan the target, starting at 1. */
+    private int attempt = 1;
+
+    private int maxAttempts = 1;
+
+    /** Timeout of the scan in ms, 0 if the timeout of the worker applies. */
+    private int scanTimeout;
+
+    /**
+     * Number of the scan job within its bulk scan, starting at 1. It is kept by all attempts and by
+     * copies that are published again, 0 if the controller did not assign one.
+     */
+    private int publishId;
+
     public ScanJob(
             ScanTarget scanTarget,
             ScanConfig scanConfig,
@@ -72,7 +91,74 @@ public class ScanJob implements Serializable {
         return status;
     }
 
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public int getScanTimeout() {
+        return scanTimeout;
+    }
+
+    public int getPublishId() {
+        return publishId;
+    }
+
+    /**
+     * @return a copy of this scan job for the next attempt
+     */
+    public ScanJob nextAttempt() {
+        ScanJob scanJob =
+                new ScanJob(
+                        scanTarget,
+                        scanConfig,
+                        bulkScanId,
+                        isMonitored,
+                        dbName,
+                        collectionName,
+                        Status.Ready);
+        scanJob.setAttempt(attempt + 1);
+        scanJob.setMaxAttempts(maxAttempts);
+        scanJob.setScanTimeout(scanTimeout);
+        scanJob.setPublishId(publishId);
+        return scanJob;
+    }
+
+    public void setScanConfig(ScanConfig scanConfig) {
+        this.scanConfig = scanConfig;
+    }
+
     public void setStatus(Status status) {
         this.status = status;
     }
+
+    public void setAttempt(int attempt) {
+        this.attempt = attempt;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public void setScanTimeout(int scanTimeout) {
+        this.scanTimeout = scanTimeout;
+    }
+
+    public void setPublishId(int publishId) {
+        this.publishId = publishId;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // field initializers do not run on deserialization, jobs of old producers have no attempts
+        if (attempt <= 0) {
+            attempt = 1;
+        }
+        if (maxAttempts <= 0) {
+            maxAttempts = 1;
+        }
+    }
 }
@@ -18,6 +18,9 @@ import org.apache.logging.log4j.Logger;
 
 public class ScanTarget implements Serializable {
 
+    /** Pinned, so legacy scan jobs are compatible with builds before the parser rewrite. */
+    private static final long serialVersionUID = -9098099349077821182L;
+
     private static final Logger LOGGER = LogManager.getLogger();
 
     private String ip;
@@ -37,60 +40,247 @@ public class ScanTarget implements Serializable {
      * @param targetString from which to create the ScanTarget object
      * @param defaultPort that used if no port is present in targetString
      * @param denylistProvider which provides info if a host is denylisted
-     * @return ScanTarget object
+     * @return ScanTarget object, null if the target is not valid, cannot be resolved or is
+     *     denylisted
      */
     public static ScanTarget fromTargetString(
             String targetString, int defaultPort, IDenylistProvider denylistProvider) {
-        ScanTarget target;
-        try {
-            target = new ScanTarget();
-            // check if targetString contains rank (e.g. "1,example.com")
-
-            if (targetString.contains(",")) {
-                if (targetString.split(",")[0].chars().allMatch(Character::isDigit)) {
-                    target.setTrancoRank(Integer.parseInt(targetString.split(",")[0]));
-                    targetString = targetString.split(",")[1];
-                } else {
-                    targetString = "";
-                }
+        ScanTarget target = parseTargetString(targetString, defaultPort);
+        if (target == null) {
+            LOGGER.error("Target {} is not valid.", targetString);
+            return null;
+        }
+        if (target.getIp() == null) {
+            try {
+                target.setIp(InetAddress.getByName(target.getHostname()).getHostAddress());
+            } catch (UnknownHostException e) {
+                LOGGER.error(
+                        "Host {} is unknown or can not be reached with error {}.",
+                        target.getHostname(),
+                        e);
+                return null;
             }
+        }
+        return target.checkDenylist(denylistProvider) ? null : target;
+    }
 
-            // Formatting for MX hosts
-            if (targetString.contains("//")) {
-                targetString = targetString.split("//")[1];
+    /**
+     * Initializes a ScanTarget object from a string like {@link #fromTargetString(String, int,
+     * IDenylistProvider)}, but without resolving the hostname. Supported formats are an optional
+     * rank followed by a comma ("1,example.com"), a scheme ("smtp://mail.example.com"), quotes and
+     * a port ("example.com:8443"). IPv6 addresses with a port have to be enclosed in brackets
+     * ("[2001:db8::1]:443"). The string is parsed in a single pass, only the host is copied into a
+     * new string. A host that is neither an IP address nor a syntactically valid hostname is
+     * rejected, so it is neither resolved nor published.
+     *
+     * @param targetString from which to create the ScanTarget object
+     * @param defaultPort that used if no port is present in targetString
+     * @return ScanTarget object, its ip is null if the target string contains a hostname. Null if
+     *     the target string is not a valid target.
+     */
+    public static ScanTarget parseTargetString(String targetString, int defaultPort) {
+        ScanTarget target = new ScanTarget();
+        int start = 0;
+        int end = targetString.length();
+        while (start < end && Character.isWhitespace(targetString.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(targetString.charAt(end - 1))) {
+            end--;
+        }
+
+        // rank (e.g. "1,example.com"), only the field after the rank is the host
+        int comma = indexOf(targetString, ',', start, end);
+        if (comma >= 0) {
+            int rank = parseNumber(targetString, start, comma);
+            if (rank < 0) {
+                return null;
             }
-            if (targetString.startsWith("\"") && targetString.endsWith("\"")) {
-                targetString = targetString.replace("\"", "");
-                System.out.println(targetString);
+            target.setTrancoRank(rank);
+            start = comma + 1;
+            int nextComma = indexOf(targetString, ',', start, end);
+            if (nextComma >= 0) {
+                end = nextComma;
             }
+        }
 
-            // check if targetString contains port (e.g. "www.example.com:8080")
-            if (targetString.contains(":")) {
-                int port = Integer.parseInt(targetString.split(":")[1]);
-                targetString = targetString.split(":")[0];
-                if (port > 1 && port < 65535) {
-                    target.setPort(port);
+        // scheme of MX hosts (e.g. "smtp://mail.example.com")
+        int scheme = targetString.indexOf("//", start);
+        if (scheme >= 0 && scheme < end) {
+            start = scheme + 2;
+        }
+        if (end - start >= 2
+                && targetString.charAt(start) == '"'
+                && targetString.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+
+        // port (e.g. "www.example.com:8080" or "[2001:db8::1]:8080")
+        int hostStart = start;
+        int hostEnd = end;
+        int portStart = -1;
+        if (start < end && targetString.charAt(start) == '[') {
+            int bracket = indexOf(targetString, ']', start, end);
+            if (bracket < 0) {
+                return null;
+            }
+            hostStart = start + 1;
+            hostEnd = bracket;
+            if (bracket + 1 < end) {
+                if (targetString.charAt(bracket + 1) != ':') {
+                    return null;
                 }
-            } else {
-                target.setPort(defaultPort);
+                portStart = bracket + 2;
             }
-            if (InetAddressValidator.getInstance().isValid(targetString)) {
-                target.setIp(targetString);
-            } else {
-                target.setIp(InetAddress.getByName(targetString).getHostAddress());
-                target.setHostname(targetString);
+        } else {
+            int colon = indexOf(targetString, ':', start, end);
+            // more than one colon is an IPv6 address without port
+            if (colon >= 0 && indexOf(targetString, ':', colon + 1, end) < 0) {
+                hostEnd = colon;
+                portStart = colon + 1;
             }
-            if (denylistProvider != null && denylistProvider.isDenylisted(target)) {
-                LOGGER.error("Host {} is blacklisted and will not be scanned.", targetString);
+        }
+        target.setPort(defaultPort);
+        if (portStart >= 0) {
+            int port = parseNumber(targetString, portStart, end);
+            if (port < 0) {
+                return null;
+            }
+            if (port > 0 && port <= 65535) {
+                target.setPort(port);
+            }
+        }
+        if (hostStart >= hostEnd) {
+            return null;
+        }
+
+        String host = targetString.substring(hostStart, hostEnd);
+        if (isIpv4Address(host)) {
+            target.setIp(host);
+        } else if (host.indexOf(':') >= 0) {
+            if (!InetAddressValidator.getInstance().isValidInet6Address(host)) {
+                return null;
             }
-        } catch (UnknownHostException e) {
-            LOGGER.error(
-                    "Host {} is unknown or can not be reached with error {}.", targetString, e);
+            target.setIp(host);
+        } else if (hostStart > start || !isHostname(host)) {
+            // only IPv6 addresses are enclosed in brackets
             return null;
+        } else {
+            target.setHostname(host);
         }
         return target;
     }
 
+    private static int indexOf(String string, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (string.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the decimal number in the range, -1 if the range is empty, contains other characters
+     *     than digits or is too long
+     */
+    private static int parseNumber(String string, int from, int to) {
+        if (from >= to || to - from > 9) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = from; i < to; i++) {
+            char c = string.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * @return whether the host is an IPv4 address in dotted decimal notation
+     */
+    private static boolean isIpv4Address(String host) {
+        int octets = 0;
+        int octetStart = 0;
+        for (int i = 0; i <= host.length(); i++) {
+            if (i == host.length() || host.charAt(i) == '.') {
+                int octet = i - octetStart <= 3 ? parseNumber(host, octetStart, i) : -1;
+                if (octet < 0 || octet > 255 || ++octets > 4) {
+                    return false;
+                }
+                octetStart = i + 1;
+            }
+        }
+        return octets == 4;
+    }
+
+    /**
+     * Checks the syntax of a hostname (RFC 1123): labels of at most 63 letters, digits or hyphens
+     * that neither start nor end with a hyphen, at most 253 characters in total and an optional
+     * trailing dot. Underscores, which occur in real world names, and non-ASCII letters of
+     * internationalized names are accepted as well. The last label must not be numeric, so partial
+     * IPv4 addresses like "10.1.1" are rejected.
+     *
+     * @return whether the host is a syntactically valid hostname
+     */
+    private static boolean isHostname(String host) {
+        int length = host.length();
+        if (length > 0 && host.charAt(length - 1) == '.') {
+            length--;
+        }
+        if (length == 0 || length > 253) {
+            return false;
+        }
+        int labelStart = 0;
+        boolean numericLabel = true;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? host.charAt(i) : '.';
+            if (c == '.') {
+                int labelLength = i - labelStart;
+                if (labelLength == 0
+                        || labelLength > 63
+                        || host.charAt(labelStart) == '-'
+                        || host.charAt(i - 1) == '-') {
+                    return false;
+                }
+                if (i == length && numericLabel) {
+                    return false;
+                }
+                labelStart = i + 1;
+                numericLabel = true;
+            } else if (c >= '0' && c <= '9') {
+                continue;
+            } else if ((c >= 'a' && c <= 'z')
+                    || (c >= 'A' && c <= 'Z')
+                    || c == '-'
+                    || c == '_'
+                    || (c > 0x7F && Character.isLetterOrDigit(c))) {
+                numericLabel = false;
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Logs if the target is denylisted.
+     *
+     * @param denylistProvider which provides info if a host is denylisted
+     * @return true if the target is denylisted and must not be scanned
+     */
+    public boolean checkDenylist(IDenylistProvider denylistProvider) {
+        if (denylistProvider != null && denylistProvider.isDenylisted(this)) {
+            LOGGER.error("Host {} is blacklisted and will not be scanned.", this);
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public String toString() {
         return hostname != null ? hostname : ip;
@@ -11,14 +11,15 @@ package de.rub.nds.tlscrawler.denylist;
 import de.rub.nds.tlscrawler.data.ScanTarget;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
-import org.apache.commons.net.util.SubnetUtils;
 import org.apache.commons.validator.routines.DomainValidator;
 import org.apache.commons.validator.routines.InetAddressValidator;
 import org.apache.commons.validator.routines.IntegerValidator;
@@ -27,42 +28,141 @@ import org.apache.logging.log4j.Logger;
 
 /**
  * Reads the specified denylist file. Supports hostnames, ips and complete subnets as denylist
- * entries.
+ * entries. A hostname prefixed with {@code *.} denies all its subdomains and a hostname prefixed
+ * with {@code .} denies the domain and all its subdomains.
+ *
+ * <p>The denylist is immutable after it was read, so it is checked without locking. If a reload
+ * interval is given, the file is read again whenever it was modified and the new denylist replaces
+ * the old one at once.
  */
 public class DenylistFileProvider implements IDenylistProvider {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
-    private final Set<String> ipDenylistSet = new HashSet<>();
-    private final List<SubnetUtils.SubnetInfo> cidrDenylist = new ArrayList<>();
-    private final Set<String> domainDenylistSet = new HashSet<>();
+    private static final String SUBDOMAINS_PREFIX = "*.";
+
+    private static final String DOMAIN_AND_SUBDOMAINS_PREFIX = ".";
+
+    private final Path denylistFile;
+
+    private volatile Denylist denylist;
+
+    private FileTime lastModified;
 
     public DenylistFileProvider(String denylistFilename) {
-        List<String> denylist = List.of();
-        try (Stream<String> lines = Files.lines(Paths.get(denylistFilename))) {
-            denylist = lines.collect(Collectors.toList());
+        this(denylistFilename, 0);
+    }
+
+    /**
+     * @param denylistFilename the denylist file
+     * @param reloadInterval interval in seconds in which the file is checked for modifications, 0
+     *     to read it only once
+     */
+    public DenylistFileProvider(String denylistFilename, long reloadInterval) {
+        this.denylistFile = Paths.get(denylistFilename);
+        this.lastModified = getLastModified();
+        Denylist initialDenylist = read();
+        this.denylist = initialDenylist != null ? initialDenylist : new Denylist();
+        if (reloadInterval > 0) {
+            ScheduledExecutorService reloadExecutor =
+                    Executors.newSingleThreadScheduledExecutor(
+                            runnable -> {
+                                Thread thread = new Thread(runnable, "denylist-reloader");
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+            reloadExecutor.scheduleWithFixedDelay(
+                    this::reloadIfModified, reloadInterval, reloadInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public boolean isDenylisted(ScanTarget target) {
+        Denylist currentDenylist = denylist;
+        return currentDenylist.domains.contains(target.getHostname())
+                || currentDenylist.ips.contains(target.getIp());
+    }
+
+    private void reloadIfModified() {
+        FileTime modified = getLastModified();
+        if (modified == null || modified.equals(lastModified)) {
+            return;
+        }
+        LOGGER.info("Denylist {} was modified, reloading it", denylistFile);
+        Denylist reloadedDenylist = read();
+        if (reloadedDenylist != null) {
+            lastModified = modified;
+            denylist = reloadedDenylist;
+        }
+    }
+
+    private FileTime getLastModified() {
+        try {
+            return Files.getLastModifiedTime(denylistFile);
         } catch (IOException e) {
-            LOGGER.error("Could not read denylist {}", denylistFilename);
+            return null;
         }
-        for (String denylistEntry : denylist) {
-            if (DomainValidator.getInstance().isValid(denylistEntry)) {
-                domainDenylistSet.add(denylistEntry);
-            } else if (InetAddressValidator.getInstance().isValid(denylistEntry)) {
-                ipDenylistSet.add(denylistEntry);
-            } else if (denylistEntry.contains("/")
-                    && InetAddressValidator.getInstance().isValid(denylistEntry.split("/")[0])
-                    && IntegerValidator.getInstance().isValid(denylistEntry.split("/")[1])) {
-                SubnetUtils utils = new SubnetUtils(denylistEntry);
-                cidrDenylist.add(utils.getInfo());
-            }
+    }
+
+    /**
+     * @return the denylist of the file, null if the file could not be read
+     */
+    private Denylist read() {
+        DomainSuffixTrie.Builder domains = new DomainSuffixTrie.Builder();
+        List<String> ipDenylistEntries = new ArrayList<>();
+        try (Stream<String> lines = Files.lines(denylistFile)) {
+            lines.map(String::trim).forEach(entry -> addEntry(entry, domains, ipDenylistEntries));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Could not read denylist {}", denylistFile, e);
+            return null;
         }
+        Denylist readDenylist = new Denylist(domains.build(), new IpRangeSet(ipDenylistEntries));
+        LOGGER.info(
+                "Read {} domains and {} ip ranges from denylist {}",
+                readDenylist.domains.size(),
+                readDenylist.ips.size(),
+                denylistFile);
+        return readDenylist;
     }
 
-    @Override
-    public synchronized boolean isDenylisted(ScanTarget target) {
-        return domainDenylistSet.contains(target.getHostname())
-                || ipDenylistSet.contains(target.getIp())
-                || cidrDenylist.stream()
-                        .anyMatch(subnetInfo -> subnetInfo.isInRange(target.getIp()));
+    private static void addEntry(
+            String denylistEntry,
+            DomainSuffixTrie.Builder domains,
+            List<String> ipDenylistEntries) {
+        if (DomainValidator.getInstance().isValid(denylistEntry)) {
+            domains.addDomain(denylistEntry);
+        } else if (denylistEntry.startsWith(SUBDOMAINS_PREFIX)
+                && DomainValidator.getInstance()
+                        .isValid(denylistEntry.substring(SUBDOMAINS_PREFIX.length()))) {
+            domains.addSubdomains(denylistEntry.substring(SUBDOMAINS_PREFIX.length()));
+        } else if (denylistEntry.startsWith(DOMAIN_AND_SUBDOMAINS_PREFIX)
+                && DomainValidator.getInstance()
+                        .isValid(denylistEntry.substring(DOMAIN_AND_SUBDOMAINS_PREFIX.length()))) {
+            domains.addDomainAndSubdomains(
+                    denylistEntry.substring(DOMAIN_AND_SUBDOMAINS_PREFIX.length()));
+        } else if (InetAddressValidator.getInstance().isValid(denylistEntry)) {
+            ipDenylistEntries.add(denylistEntry);
+        } else if (denylistEntry.contains("/")
+                && InetAddressValidator.getInstance().isValid(denylistEntry.split("/")[0])
+                && IntegerValidator.getInstance().isValid(denylistEntry.split("/")[1])) {
+            ipDenylistEntries.add(denylistEntry);
+        }
+    }
+
+    /** The entries of one version of the denylist file. */
+    private static class Denylist {
+
+        private final DomainSuffixTrie domains;
+
+        private final IpRangeSet ips;
+
+        private Denylist() {
+            this(new DomainSuffixTrie.Builder().build(), new IpRangeSet(List.of()));
+        }
+
+        private Denylist(DomainSuffixTrie domains, IpRangeSet ips) {
+            this.domains = domains;
+            this.ips = ips;
+        }
     }
 }
@@ -0,0 +1,207 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.denylist;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable set of domains and domain suffixes. The domains are stored as a trie of their labels in
+ * reversed order, so {@code www.example.gov} is found via {@code gov}, {@code example} and {@code
+ * www}. Labels are shared between all domains, e.g. {@code gov} is stored once, and the children of
+ * a node are held in sorted arrays. A lookup takes one binary search per label of the hostname and
+ * allocates nothing.
+ */
+class DomainSuffixTrie {
+
+    private static final String[] NO_LABELS = new String[0];
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node root;
+
+    private final int size;
+
+    private DomainSuffixTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @param hostname the hostname to check, case-insensitive and with or without trailing dot
+     * @return whether the hostname is one of the domains or a subdomain of one of the suffixes
+     */
+    boolean contains(String hostname) {
+        if (hostname == null) {
+            return false;
+        }
+        int end = hostname.endsWith(".") ? hostname.length() - 1 : hostname.length();
+        Node node = root;
+        while (end > 0) {
+            int start = hostname.lastIndexOf('.', end - 1) + 1;
+            node = node.child(hostname, start, end);
+            if (node == null) {
+                return false;
+            }
+            if (start == 0) {
+                return node.domain;
+            }
+            if (node.subdomains) {
+                return true;
+            }
+            end = start - 1;
+        }
+        return false;
+    }
+
+    /**
+     * @return number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /** Collects the entries of a trie. */
+    static class Builder {
+
+        private final BuilderNode root = new BuilderNode();
+
+        /** Labels of all entries, so equal labels are held as the same string. */
+        private final Map<String, String> labels = new HashMap<>();
+
+        private int size;
+
+        /**
+         * Adds a domain that is matched exactly.
+         *
+         * @param domain e.g. {@code example.gov}
+         * @return this builder
+         */
+        Builder addDomain(String domain) {
+            add(domain).domain = true;
+            return this;
+        }
+
+        /**
+         * Adds a suffix whose subdomains are matched, but not the domain itself.
+         *
+         * @param domain e.g. {@code example.gov} to match {@code www.example.gov}
+         * @return this builder
+         */
+        Builder addSubdomains(String domain) {
+            add(domain).subdomains = true;
+            return this;
+        }
+
+        /**
+         * Adds a domain that is matched together with all its subdomains.
+         *
+         * @param domain e.g. {@code example.gov} to match it and {@code www.example.gov}
+         * @return this builder
+         */
+        Builder addDomainAndSubdomains(String domain) {
+            BuilderNode node = add(domain);
+            node.domain = true;
+            node.subdomains = true;
+            return this;
+        }
+
+        DomainSuffixTrie build() {
+            return new DomainSuffixTrie(root.build(), size);
+        }
+
+        private BuilderNode add(String domain) {
+            String[] domainLabels = domain.toLowerCase(Locale.ROOT).split("\\.");
+            BuilderNode node = root;
+            for (int i = domainLabels.length - 1; i >= 0; i--) {
+                String label = labels.computeIfAbsent(domainLabels[i], key -> key);
+                node = node.children.computeIfAbsent(label, key -> new BuilderNode());
+            }
+            size++;
+            return node;
+        }
+    }
+
+    private static class BuilderNode {
+
+        private final Map<String, BuilderNode> children = new HashMap<>();
+
+        private boolean domain;
+
+        private boolean subdomains;
+
+        private Node build() {
+            String[] labels = children.keySet().toArray(NO_LABELS);
+            Arrays.sort(labels);
+            Node[] nodes = labels.length == 0 ? NO_CHILDREN : new Node[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                nodes[i] = children.get(labels[i]).build();
+            }
+            return new Node(labels, nodes, domain, subdomains);
+        }
+    }
+
+    private static class Node {
+
+        /** Lower case labels of the children in ascending order. */
+        private final String[] labels;
+
+        private final Node[] children;
+
+        /** Whether the domain of this node is an entry. */
+        private final boolean domain;
+
+        /** Whether all subdomains of the domain of this node are entries. */
+        private final boolean subdomains;
+
+        private Node(String[] labels, Node[] children, boolean domain, boolean subdomains) {
+            this.labels = labels;
+            this.children = children;
+            this.domain = domain;
+            this.subdomains = subdomains;
+        }
+
+        /**
+         * @return the child whose label is the given part of the hostname, null if there is none
+         */
+        private Node child(String hostname, int start, int end) {
+            int low = 0;
+            int high = labels.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = compare(labels[middle], hostname, start, end);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return children[middle];
+                }
+            }
+            return null;
+        }
+
+        /** Compares a label with a part of the hostname, ignoring the case of the hostname. */
+        private static int compare(String label, String hostname, int start, int end) {
+            int length = Math.min(label.length(), end - start);
+            for (int i = 0; i < length; i++) {
+                char c = hostname.charAt(start + i);
+                if (c >= 'A' && c <= 'Z') {
+                    c = (char) (c + ('a' - 'A'));
+                }
+                if (label.charAt(i) != c) {
+                    return label.charAt(i) - c;
+                }
+            }
+            return label.length() - (end - start);
+        }
+    }
+}
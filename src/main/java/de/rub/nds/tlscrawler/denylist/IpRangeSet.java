@@ -0,0 +1,258 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.denylist;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.commons.validator.routines.InetAddressValidator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Immutable set of IPv4 and IPv6 address ranges. The ranges are merged and stored as sorted arrays
+ * of primitive start and end addresses, so a lookup is a binary search without locking and without
+ * allocations for IPv4 addresses. IPv4 addresses are held as longs, IPv6 addresses as two longs.
+ */
+class IpRangeSet {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int IPV4_BITS = 32;
+
+    private static final int IPV6_BITS = 128;
+
+    private final long[] ipv4Starts;
+
+    private final long[] ipv4Ends;
+
+    private final long[] ipv6StartsHigh;
+
+    private final long[] ipv6StartsLow;
+
+    private final long[] ipv6EndsHigh;
+
+    private final long[] ipv6EndsLow;
+
+    /**
+     * @param entries IP addresses and subnets in CIDR notation, invalid entries are skipped
+     */
+    IpRangeSet(Collection<String> entries) {
+        List<long[]> ipv4Ranges = new ArrayList<>();
+        List<long[]> ipv6Ranges = new ArrayList<>();
+        for (String entry : entries) {
+            int slash = entry.indexOf('/');
+            String address = slash < 0 ? entry : entry.substring(0, slash);
+            if (!InetAddressValidator.getInstance().isValid(address)) {
+                LOGGER.warn("Skipping invalid denylist entry {}", entry);
+                continue;
+            }
+            byte[] bytes;
+            try {
+                // a literal address is parsed without any lookup
+                bytes = InetAddress.getByName(address).getAddress();
+            } catch (UnknownHostException e) {
+                LOGGER.warn("Skipping invalid denylist entry {}", entry);
+                continue;
+            }
+            int bits = bytes.length * 8;
+            int prefix;
+            try {
+                prefix = slash < 0 ? bits : Integer.parseInt(entry.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                prefix = -1;
+            }
+            if (prefix < 0 || prefix > bits) {
+                LOGGER.warn("Skipping denylist entry {} with invalid prefix length", entry);
+                continue;
+            }
+            if (bits == IPV4_BITS) {
+                ipv4Ranges.add(ipv4Range(toLong(bytes, 0, 4), prefix));
+            } else {
+                ipv6Ranges.add(ipv6Range(toLong(bytes, 0, 8), toLong(bytes, 8, 16), prefix));
+            }
+        }
+
+        ipv4Ranges = merge(ipv4Ranges, Comparator.comparingLong(range -> range[0]));
+        ipv4Starts = new long[ipv4Ranges.size()];
+        ipv4Ends = new long[ipv4Ranges.size()];
+        for (int i = 0; i < ipv4Ranges.size(); i++) {
+            ipv4Starts[i] = ipv4Ranges.get(i)[0];
+            ipv4Ends[i] = ipv4Ranges.get(i)[1];
+        }
+
+        ipv6Ranges = merge(ipv6Ranges, (a, b) -> compareUnsigned(a[0], a[1], b[0], b[1]));
+        ipv6StartsHigh = new long[ipv6Ranges.size()];
+        ipv6StartsLow = new long[ipv6Ranges.size()];
+        ipv6EndsHigh = new long[ipv6Ranges.size()];
+        ipv6EndsLow = new long[ipv6Ranges.size()];
+        for (int i = 0; i < ipv6Ranges.size(); i++) {
+            long[] range = ipv6Ranges.get(i);
+            ipv6StartsHigh[i] = range[0];
+            ipv6StartsLow[i] = range[1];
+            ipv6EndsHigh[i] = range[2];
+            ipv6EndsLow[i] = range[3];
+        }
+    }
+
+    /**
+     * @param ip an IPv4 or IPv6 address
+     * @return whether the address is in one of the ranges, false if it is not a valid address
+     */
+    boolean contains(String ip) {
+        if (ip == null) {
+            return false;
+        }
+        if (ip.indexOf(':') < 0) {
+            long address = parseIpv4(ip);
+            return address >= 0 && containsIpv4(address);
+        }
+        if (size() == 0 || !InetAddressValidator.getInstance().isValidInet6Address(ip)) {
+            return false;
+        }
+        byte[] bytes;
+        try {
+            bytes = InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+        if (bytes.length == 4) {
+            // an IPv4-mapped IPv6 address, checked even if there are no IPv6 ranges
+            return containsIpv4(toLong(bytes, 0, 4));
+        }
+        return ipv6StartsHigh.length > 0 && containsIpv6(toLong(bytes, 0, 8), toLong(bytes, 8, 16));
+    }
+
+    /**
+     * @return number of ranges after merging overlapping ranges
+     */
+    int size() {
+        return ipv4Starts.length + ipv6StartsHigh.length;
+    }
+
+    private boolean containsIpv4(long address) {
+        int index = Arrays.binarySearch(ipv4Starts, address);
+        if (index < 0) {
+            // the range with the greatest start below the address
+            index = -index - 2;
+        }
+        return index >= 0 && address <= ipv4Ends[index];
+    }
+
+    private boolean containsIpv6(long high, long low) {
+        // the range with the greatest start not above the address
+        int lowIndex = 0;
+        int highIndex = ipv6StartsHigh.length - 1;
+        int index = -1;
+        while (lowIndex <= highIndex) {
+            int middle = (lowIndex + highIndex) >>> 1;
+            if (compareUnsigned(ipv6StartsHigh[middle], ipv6StartsLow[middle], high, low) <= 0) {
+                index = middle;
+                lowIndex = middle + 1;
+            } else {
+                highIndex = middle - 1;
+            }
+        }
+        return index >= 0
+                && compareUnsigned(high, low, ipv6EndsHigh[index], ipv6EndsLow[index]) <= 0;
+    }
+
+    /**
+     * @return start and end of the subnet
+     */
+    private static long[] ipv4Range(long address, int prefix) {
+        long hostMask = (1L << (IPV4_BITS - prefix)) - 1;
+        long start = address & ~hostMask;
+        return new long[] {start, start | hostMask};
+    }
+
+    /**
+     * @return high and low half of the start and of the end of the subnet
+     */
+    private static long[] ipv6Range(long high, long low, int prefix) {
+        if (prefix <= 64) {
+            long hostMask = prefix == 0 ? -1L : -1L >>> prefix;
+            long start = high & ~hostMask;
+            return new long[] {start, 0, start | hostMask, -1L};
+        }
+        long hostMask = prefix == IPV6_BITS ? 0 : -1L >>> (prefix - 64);
+        long start = low & ~hostMask;
+        return new long[] {high, start, high, start | hostMask};
+    }
+
+    /**
+     * Sorts the ranges by their start and merges overlapping ranges. A range consists of its start
+     * followed by its end, each of the same number of longs.
+     */
+    private static List<long[]> merge(List<long[]> ranges, Comparator<long[]> startComparator) {
+        ranges.sort(startComparator);
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && startComparator.compare(range, endOf(last)) <= 0) {
+                if (startComparator.compare(endOf(range), endOf(last)) > 0) {
+                    int half = range.length / 2;
+                    System.arraycopy(range, half, last, half, half);
+                }
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    private static long[] endOf(long[] range) {
+        return Arrays.copyOfRange(range, range.length / 2, range.length);
+    }
+
+    private static int compareUnsigned(long highA, long lowA, long highB, long lowB) {
+        int high = Long.compareUnsigned(highA, highB);
+        return high != 0 ? high : Long.compareUnsigned(lowA, lowB);
+    }
+
+    private static long toLong(byte[] bytes, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * @return the address as unsigned value, -1 if it is not an IPv4 address in dotted decimal
+     *     notation
+     */
+    private static long parseIpv4(String ip) {
+        long address = 0;
+        int octets = 0;
+        int octet = -1;
+        for (int i = 0; i <= ip.length(); i++) {
+            char c = i < ip.length() ? ip.charAt(i) : '.';
+            if (c == '.') {
+                if (octet < 0 || ++octets > 4) {
+                    return -1;
+                }
+                address = (address << 8) | octet;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        return octets == 4 ? address : -1;
+    }
+}
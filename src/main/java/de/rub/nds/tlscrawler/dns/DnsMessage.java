@@ -0,0 +1,273 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes DNS queries and decodes the parts of DNS responses that are needed to resolve a hostname
+ * (RFC 1035). Only the addresses and CNAME TTLs of the answer section and the negative caching TTL
+ * of the SOA record in the authority section (RFC 2308) are decoded.
+ */
+final class DnsMessage {
+
+    static final int TYPE_A = 1;
+
+    static final int TYPE_AAAA = 28;
+
+    private static final int TYPE_CNAME = 5;
+
+    private static final int TYPE_SOA = 6;
+
+    private static final int CLASS_IN = 1;
+
+    static final int RCODE_NO_ERROR = 0;
+
+    static final int RCODE_NAME_ERROR = 3;
+
+    private static final int HEADER_LENGTH = 12;
+
+    private static final int FLAG_RESPONSE = 0x8000;
+
+    private static final int FLAG_TRUNCATED = 0x0200;
+
+    private static final int FLAG_RECURSION_DESIRED = 0x0100;
+
+    private static final int MAX_LABEL_LENGTH = 63;
+
+    private static final int MAX_NAME_LENGTH = 253;
+
+    /** Pointers of a compressed name start with the two highest bits set. */
+    private static final int POINTER_MASK = 0xC0;
+
+    private static final int MAX_POINTERS = 16;
+
+    private DnsMessage() {}
+
+    /**
+     * Writes a recursive query for the name into the buffer.
+     *
+     * @param buffer to write the query to, is flipped afterwards
+     * @param id of the query
+     * @param name the hostname in ASCII form without trailing dot
+     * @param type of the queried records
+     * @throws IllegalArgumentException if the name is not a valid hostname
+     */
+    static void encodeQuery(ByteBuffer buffer, int id, String name, int type) {
+        if (name.isEmpty() || name.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Invalid hostname length: " + name);
+        }
+        buffer.clear();
+        buffer.putShort((short) id);
+        buffer.putShort((short) FLAG_RECURSION_DESIRED);
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        int labelStart = 0;
+        while (labelStart <= name.length()) {
+            int labelEnd = name.indexOf('.', labelStart);
+            if (labelEnd < 0) {
+                labelEnd = name.length();
+            }
+            int labelLength = labelEnd - labelStart;
+            if (labelLength == 0 || labelLength > MAX_LABEL_LENGTH) {
+                throw new IllegalArgumentException("Invalid label in hostname: " + name);
+            }
+            buffer.put((byte) labelLength);
+            for (int i = labelStart; i < labelEnd; i++) {
+                char c = name.charAt(i);
+                if (c > 0x7F) {
+                    throw new IllegalArgumentException("Hostname is not ASCII: " + name);
+                }
+                buffer.put((byte) c);
+            }
+            labelStart = labelEnd + 1;
+        }
+        buffer.put((byte) 0);
+        buffer.putShort((short) type);
+        buffer.putShort((short) CLASS_IN);
+        buffer.flip();
+    }
+
+    /**
+     * @param buffer containing a received datagram
+     * @return the decoded response, null if the datagram is not a valid DNS response
+     */
+    static Response decodeResponse(ByteBuffer buffer) {
+        try {
+            if (buffer.remaining() < HEADER_LENGTH) {
+                return null;
+            }
+            int id = buffer.getShort() & 0xFFFF;
+            int flags = buffer.getShort() & 0xFFFF;
+            if ((flags & FLAG_RESPONSE) == 0) {
+                return null;
+            }
+            int questionCount = buffer.getShort() & 0xFFFF;
+            int answerCount = buffer.getShort() & 0xFFFF;
+            int authorityCount = buffer.getShort() & 0xFFFF;
+            buffer.getShort();
+            if (questionCount != 1) {
+                return null;
+            }
+            Response response = new Response(id, flags & 0xF, (flags & FLAG_TRUNCATED) != 0);
+            response.name = readName(buffer);
+            response.type = buffer.getShort() & 0xFFFF;
+            if ((buffer.getShort() & 0xFFFF) != CLASS_IN) {
+                // queries are only sent for the internet class
+                return null;
+            }
+            long cnameTtl = -1;
+            for (int i = 0; i < answerCount; i++) {
+                readName(buffer);
+                int type = buffer.getShort() & 0xFFFF;
+                buffer.getShort();
+                long ttl = buffer.getInt() & 0xFFFFFFFFL;
+                int length = buffer.getShort() & 0xFFFF;
+                int end = buffer.position() + length;
+                // CNAME records of the chain are followed by the records of the canonical name
+                if (type == response.type && (type == TYPE_A || type == TYPE_AAAA)) {
+                    byte[] address = new byte[length];
+                    buffer.get(address);
+                    response.addresses.add(InetAddress.getByAddress(address).getHostAddress());
+                    response.ttl = response.ttl < 0 ? ttl : Math.min(response.ttl, ttl);
+                } else if (type == TYPE_CNAME) {
+                    cnameTtl = cnameTtl < 0 ? ttl : Math.min(cnameTtl, ttl);
+                }
+                buffer.position(end);
+            }
+            for (int i = 0; i < authorityCount; i++) {
+                readName(buffer);
+                int type = buffer.getShort() & 0xFFFF;
+                buffer.getShort();
+                long ttl = buffer.getInt() & 0xFFFFFFFFL;
+                int length = buffer.getShort() & 0xFFFF;
+                int end = buffer.position() + length;
+                if (type == TYPE_SOA) {
+                    // the minimum field is the last field of the record
+                    long minimum = buffer.getInt(end - 4) & 0xFFFFFFFFL;
+                    response.negativeTtl = Math.min(ttl, minimum);
+                }
+                buffer.position(end);
+            }
+            if (cnameTtl >= 0) {
+                // the outcome for the queried name is only valid as long as each alias of the chain
+                response.ttl = response.ttl < 0 ? -1 : Math.min(response.ttl, cnameTtl);
+                response.negativeTtl =
+                        response.negativeTtl < 0 ? -1 : Math.min(response.negativeTtl, cnameTtl);
+            }
+            return response;
+        } catch (BufferUnderflowException
+                | IllegalArgumentException
+                | IndexOutOfBoundsException
+                | UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /** Reads a possibly compressed name, the buffer is positioned after the name afterwards. */
+    private static String readName(ByteBuffer buffer) {
+        StringBuilder name = new StringBuilder();
+        int position = buffer.position();
+        int end = -1;
+        int pointers = 0;
+        while (true) {
+            int length = buffer.get(position) & 0xFF;
+            if ((length & POINTER_MASK) == POINTER_MASK) {
+                if (++pointers > MAX_POINTERS) {
+                    throw new IllegalArgumentException("Too many compression pointers");
+                }
+                if (end < 0) {
+                    end = position + 2;
+                }
+                position = ((length & ~POINTER_MASK) << 8) | (buffer.get(position + 1) & 0xFF);
+            } else if (length == 0) {
+                buffer.position(end < 0 ? position + 1 : end);
+                return name.toString();
+            } else {
+                if (name.length() > 0) {
+                    name.append('.');
+                }
+                byte[] label = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    label[i] = buffer.get(position + 1 + i);
+                }
+                name.append(new String(label, StandardCharsets.US_ASCII));
+                position += length + 1;
+            }
+        }
+    }
+
+    /** The decoded parts of a DNS response. */
+    static final class Response {
+
+        private final int id;
+
+        private final int rcode;
+
+        private final boolean truncated;
+
+        private String name;
+
+        private int type;
+
+        private final List<String> addresses = new ArrayList<>();
+
+        /** Lowest TTL of the addresses in seconds, -1 if there are none. */
+        private long ttl = -1;
+
+        /** TTL for negative caching in seconds, -1 if the response contained no SOA record. */
+        private long negativeTtl = -1;
+
+        private Response(int id, int rcode, boolean truncated) {
+            this.id = id;
+            this.rcode = rcode;
+            this.truncated = truncated;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        int getRcode() {
+            return rcode;
+        }
+
+        boolean isTruncated() {
+            return truncated;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getType() {
+            return type;
+        }
+
+        List<String> getAddresses() {
+            return addresses;
+        }
+
+        long getTtl() {
+            return ttl;
+        }
+
+        long getNegativeTtl() {
+            return negativeTtl;
+        }
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.dns;
+
+import java.io.IOException;
+import java.net.IDN;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Resolves hostnames without blocking a thread per lookup. Queries are sent over a single UDP
+ * socket to a recursive name server and their responses are received by one selector thread, so
+ * many queries are in flight at once. The number of queries in flight is bounded by a window,
+ * further queries wait until a response arrived. Each query is sent with a random id and a response
+ * is only accepted if its id, question name and question type match a query in flight.
+ *
+ * <p>Addresses are cached for the TTL of their records. Names that do not exist or have no address
+ * are cached as well, for the negative caching TTL of the zone (RFC 2308). An A record is
+ * preferred, an AAAA record is only queried if the name has no A record.
+ */
+public class DnsResolver implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    public static final int DNS_PORT = 53;
+
+    /** Maximum time a select waits, timeouts are checked in this interval. */
+    private static final long SELECT_INTERVAL_MS = 50;
+
+    /** Number of times a query is sent again after it timed out. */
+    private static final int MAX_RETRIES = 2;
+
+    /** Upper bound of the cache TTL in seconds, also used as the bound of the negative TTL. */
+    private static final long MAX_CACHE_TTL = 3600;
+
+    /** Negative cache TTL in seconds if the response does not contain the SOA of the zone. */
+    private static final long DEFAULT_NEGATIVE_TTL = 300;
+
+    /** Once the cache is full, the entry that was added first is evicted. */
+    private static final int MAX_CACHE_ENTRIES = 100000;
+
+    /** Queries use 16 bit ids, so the window has to stay well below their number. */
+    private static final int MAX_WINDOW = 16384;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final int window;
+
+    private final long timeoutMs;
+
+    private final DatagramChannel channel;
+
+    private final Selector selector;
+
+    private final Thread selectorThread;
+
+    /** Queries that were not sent yet. */
+    private final Deque<Query> waitingQueries = new ConcurrentLinkedDeque<>();
+
+    /** Queries in flight by their id, only accessed by the selector thread. */
+    private final Map<Integer, Query> inFlightQueries = new HashMap<>();
+
+    /** Lookups of names that are not answered yet, concurrent lookups of a name are combined. */
+    private final Map<String, CompletableFuture<String>> pendingLookups = new ConcurrentHashMap<>();
+
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Cache entries in the order they were added, the oldest one is evicted once the cache is full.
+     * Only accessed by the selector thread. Entries that expired or were replaced stay in the queue
+     * until their turn, so the cache never holds more entries than the queue.
+     */
+    private final Deque<CacheEntry> cacheOrder = new ArrayDeque<>();
+
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final AtomicLong resolvedNames = new AtomicLong();
+
+    private final AtomicLong failedNames = new AtomicLong();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    /** Query ids are unpredictable, so responses are hard to spoof although the port is fixed. */
+    private final SecureRandom random = new SecureRandom();
+
+    private volatile boolean closed;
+
+    /**
+     * @param nameServer address of the recursive name server
+     * @param window maximum number of queries in flight
+     * @param timeoutMs time after which a query without response is sent again
+     * @throws IOException if the socket cannot be opened
+     */
+    public DnsResolver(InetSocketAddress nameServer, int window, long timeoutMs)
+            throws IOException {
+        this.window = Math.max(1, Math.min(window, MAX_WINDOW));
+        this.timeoutMs = timeoutMs;
+        this.channel = DatagramChannel.open();
+        // responses of many queries in flight arrive in bursts
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+        // only datagrams of the name server are received
+        channel.connect(nameServer);
+        channel.configureBlocking(false);
+        this.selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        this.selectorThread = new Thread(this::select, "dns-resolver");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    /**
+     * @return the first name server of /etc/resolv.conf, null if there is none
+     */
+    public static InetSocketAddress getSystemNameServer() {
+        Path resolvConf = Paths.get("/etc/resolv.conf");
+        if (!Files.isReadable(resolvConf)) {
+            return null;
+        }
+        try {
+            for (String line : Files.readAllLines(resolvConf)) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length >= 2 && fields[0].equals("nameserver")) {
+                    return new InetSocketAddress(fields[1], DNS_PORT);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not read {}: ", resolvConf, e);
+        }
+        return null;
+    }
+
+    /**
+     * @param nameServer address of a name server as host, host:port, IPv6 address or [IPv6
+     *     address]:port
+     * @return the socket address of the name server, port 53 if none is given
+     * @throws IllegalArgumentException if the port is not valid
+     */
+    public static InetSocketAddress parseNameServer(String nameServer) {
+        String host = nameServer;
+        String port = null;
+        if (nameServer.startsWith("[")) {
+            int end = nameServer.indexOf(']');
+            if (end < 0 || (end + 1 < nameServer.length() && nameServer.charAt(end + 1) != ':')) {
+                throw new IllegalArgumentException("Invalid name server " + nameServer);
+            }
+            host = nameServer.substring(1, end);
+            port = end + 1 < nameServer.length() ? nameServer.substring(end + 2) : null;
+        } else if (nameServer.indexOf(':') == nameServer.lastIndexOf(':')
+                && nameServer.indexOf(':') >= 0) {
+            // a single colon separates the port, more colons are part of an IPv6 address
+            host = nameServer.substring(0, nameServer.indexOf(':'));
+            port = nameServer.substring(nameServer.indexOf(':') + 1);
+        }
+        try {
+            return new InetSocketAddress(host, port != null ? Integer.parseInt(port) : DNS_PORT);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid port of name server " + nameServer, e);
+        }
+    }
+
+    /**
+     * Resolves the hostname to an IP address.
+     *
+     * @param hostname to resolve
+     * @return future of the address, failed with an {@link UnknownHostException} if the hostname
+     *     could not be resolved
+     */
+    public CompletableFuture<String> resolve(String hostname) {
+        String name;
+        try {
+            name = IDN.toASCII(hostname).toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return failed(hostname);
+        }
+        if (name.endsWith(".")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        CacheEntry cacheEntry = cache.get(name);
+        if (cacheEntry != null) {
+            if (cacheEntry.expires > System.currentTimeMillis()) {
+                cacheHits.incrementAndGet();
+                return cacheEntry.address != null
+                        ? CompletableFuture.completedFuture(cacheEntry.address)
+                        : failed(hostname);
+            }
+            cache.remove(name, cacheEntry);
+        }
+        String queryName = name;
+        return pendingLookups.computeIfAbsent(
+                name,
+                key -> {
+                    CompletableFuture<String> lookup = new CompletableFuture<>();
+                    waitingQueries.add(new Query(queryName, DnsMessage.TYPE_A, lookup));
+                    selector.wakeup();
+                    return lookup;
+                });
+    }
+
+    /**
+     * @return number of names that were resolved, without cache hits
+     */
+    public long getResolvedNames() {
+        return resolvedNames.get();
+    }
+
+    /**
+     * @return number of names that could not be resolved, without cache hits
+     */
+    public long getFailedNames() {
+        return failedNames.get();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /** Stops the resolver, lookups that are not answered yet fail. */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void select() {
+        while (!closed) {
+            try {
+                sendWaitingQueries();
+                selector.select(SELECT_INTERVAL_MS);
+                selector.selectedKeys().clear();
+                receiveResponses();
+                retryExpiredQueries();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Exception while resolving hostnames: ", e);
+            }
+        }
+        for (Query query : inFlightQueries.values()) {
+            fail(query);
+        }
+        Query query;
+        while ((query = waitingQueries.poll()) != null) {
+            fail(query);
+        }
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close DNS socket: ", e);
+        }
+    }
+
+    private void sendWaitingQueries() throws IOException {
+        Query query;
+        while (inFlightQueries.size() < window && (query = waitingQueries.poll()) != null) {
+            if (!send(query)) {
+                // the send buffer of the socket is full, try again later
+                waitingQueries.addFirst(query);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return false if the query could not be sent right now
+     */
+    private boolean send(Query query) throws IOException {
+        int id = nextFreeId();
+        try {
+            DnsMessage.encodeQuery(sendBuffer, id, query.name, query.type);
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Not resolving invalid hostname {}", query.name);
+            complete(query, null, DEFAULT_NEGATIVE_TTL);
+            return true;
+        }
+        if (channel.write(sendBuffer) == 0) {
+            return false;
+        }
+        query.id = id;
+        query.deadline = System.currentTimeMillis() + timeoutMs;
+        inFlightQueries.put(id, query);
+        return true;
+    }
+
+    /**
+     * @return a random id that no query in flight uses, so a response matches at most one query
+     */
+    private int nextFreeId() {
+        int id;
+        do {
+            id = random.nextInt(0x10000);
+        } while (inFlightQueries.containsKey(id));
+        return id;
+    }
+
+    private void receiveResponses() throws IOException {
+        while (true) {
+            receiveBuffer.clear();
+            if (channel.receive(receiveBuffer) == null) {
+                return;
+            }
+            receiveBuffer.flip();
+            DnsMessage.Response response = DnsMessage.decodeResponse(receiveBuffer);
+            if (response == null) {
+                continue;
+            }
+            Query query = inFlightQueries.get(response.getId());
+            // a response has to match the question, otherwise it is a late or spoofed response
+            if (query == null
+                    || response.getType() != query.type
+                    || !query.name.equalsIgnoreCase(response.getName())) {
+                continue;
+            }
+            inFlightQueries.remove(response.getId());
+            handleResponse(query, response);
+        }
+    }
+
+    private void handleResponse(Query query, DnsMessage.Response response) {
+        long negativeTtl =
+                response.getNegativeTtl() >= 0 ? response.getNegativeTtl() : DEFAULT_NEGATIVE_TTL;
+        if (!response.getAddresses().isEmpty()) {
+            complete(query, response.getAddresses().get(0), response.getTtl());
+        } else if (response.getRcode() == DnsMessage.RCODE_NO_ERROR && !response.isTruncated()) {
+            if (query.type == DnsMessage.TYPE_A) {
+                // the name exists but has no IPv4 address
+                waitingQueries.addFirst(new Query(query.name, DnsMessage.TYPE_AAAA, query.lookup));
+            } else {
+                complete(query, null, negativeTtl);
+            }
+        } else if (response.getRcode() == DnsMessage.RCODE_NAME_ERROR) {
+            complete(query, null, negativeTtl);
+        } else {
+            // e.g. a server failure, which is not cached
+            LOGGER.debug("Resolving {} failed with rcode {}", query.name, response.getRcode());
+            fail(query);
+        }
+    }
+
+    private void retryExpiredQueries() throws IOException {
+        long now = System.currentTimeMillis();
+        List<Query> expiredQueries = new ArrayList<>();
+        Iterator<Query> iterator = inFlightQueries.values().iterator();
+        while (iterator.hasNext()) {
+            Query query = iterator.next();
+            if (query.deadline <= now) {
+                iterator.remove();
+                expiredQueries.add(query);
+            }
+        }
+        for (Query query : expiredQueries) {
+            if (query.retries++ < MAX_RETRIES) {
+                waitingQueries.addFirst(query);
+            } else {
+                LOGGER.debug("Resolving {} timed out", query.name);
+                fail(query);
+            }
+        }
+    }
+
+    /**
+     * Caches the outcome of the lookup and completes it.
+     *
+     * @param address the resolved address, null if the name has no address
+     * @param ttl of the outcome in seconds
+     */
+    private void complete(Query query, String address, long ttl) {
+        if (ttl > 0) {
+            CacheEntry cacheEntry =
+                    new CacheEntry(
+                            query.name,
+                            address,
+                            System.currentTimeMillis() + Math.min(ttl, MAX_CACHE_TTL) * 1000);
+            if (cacheOrder.size() >= MAX_CACHE_ENTRIES) {
+                CacheEntry eldest = cacheOrder.poll();
+                cache.remove(eldest.name, eldest);
+            }
+            cacheOrder.add(cacheEntry);
+            cache.put(query.name, cacheEntry);
+        }
+        pendingLookups.remove(query.name, query.lookup);
+        if (address != null) {
+            resolvedNames.incrementAndGet();
+            query.lookup.complete(address);
+        } else {
+            failedNames.incrementAndGet();
+            query.lookup.completeExceptionally(new UnknownHostException(query.name));
+        }
+    }
+
+    /** Fails the lookup without caching its outcome. */
+    private void fail(Query query) {
+        pendingLookups.remove(query.name, query.lookup);
+        failedNames.incrementAndGet();
+        query.lookup.completeExceptionally(new UnknownHostException(query.name));
+    }
+
+    private static CompletableFuture<String> failed(String hostname) {
+        return CompletableFuture.failedFuture(new UnknownHostException(hostname));
+    }
+
+    private static class Query {
+
+        private final String name;
+
+        private final int type;
+
+        private final CompletableFuture<String> lookup;
+
+        private int id;
+
+        private long deadline;
+
+        private int retries;
+
+        private Query(String name, int type, CompletableFuture<String> lookup) {
+            this.name = name;
+            this.type = type;
+            this.lookup = lookup;
+        }
+    }
+
+    private static class CacheEntry {
+
+        private final String name;
+
+        /** Null for a negative entry. */
+        private final String address;
+
+        private final long expires;
+
+        private CacheEntry(String name, String address, long expires) {
+            this.name = name;
+            this.address = address;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.orchestration;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Collects the delivery tags of completed scan jobs per consumer channel and acknowledges them in
+ * bulk. Delivery tags on a channel are consecutive, so all completed tags up to the first gap are
+ * acknowledged with a single {@code basicAck(tag, true)}. Tags after a gap, i.e. scan jobs that
+ * completed while an older scan job is still running, are kept in the hope that the gap closes.
+ * They are only acknowledged individually once the oldest of them waited for a bounded time or too
+ * many of them occupy the prefetch window of the channel.
+ *
+ * <p>Before acknowledgements are sent a callback is run outside of the locks of the channels, which
+ * allows to publish e.g. the progress of the completed scan jobs first, so it is not lost if the
+ * worker dies after the acknowledgement. Only scan jobs that were completed before the callback
+ * started are acknowledged, later ones wait for the next flush.
+ */
+class AckCoalescer {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** Number of flush intervals after which tags behind a gap are acknowledged individually. */
+    private static final int MAX_GAP_AGE_FLUSHES = 20;
+
+    @FunctionalInterface
+    interface AckSender {
+        void sendAck(int consumerId, long tag, boolean multiple) throws IOException;
+    }
+
+    private final AckSender ackSender;
+
+    private final Runnable beforeAck;
+
+    /** Number of completed scan jobs so far, orders completions relative to the callback. */
+    private final AtomicLong completions = new AtomicLong();
+
+    private final int batchSize;
+
+    private final Map<Integer, ChannelAcks> acksByConsumerId = new ConcurrentHashMap<>();
+
+    private final long maxGapAgeMs;
+
+    /** Number of tags behind a gap after which they are acknowledged individually. */
+    private volatile int maxTrackedTags;
+
+    private final ScheduledExecutorService flushExecutor;
+
+    /**
+     * @param ackSender used to send the acknowledgements
+     * @param beforeAck run before acknowledgements are sent
+     * @param flushIntervalMs interval in which all completed tags are acknowledged
+     * @param batchSize number of completed tags after which acknowledgements are sent without
+     *     waiting for the next timed flush
+     */
+    AckCoalescer(AckSender ackSender, Runnable beforeAck, long flushIntervalMs, int batchSize) {
+        this.ackSender = ackSender;
+        this.beforeAck = beforeAck;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxGapAgeMs = flushIntervalMs * MAX_GAP_AGE_FLUSHES;
+        this.maxTrackedTags = this.batchSize;
+        this.flushExecutor =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "ack-coalescer");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        this.flushExecutor.scheduleWithFixedDelay(
+                this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the number of completed tags behind a gap after which they are acknowledged
+     * individually. It should be below the prefetch count of a channel, as tags that wait for their
+     * acknowledgement occupy the prefetch window.
+     *
+     * @param maxTrackedTags maximum number of completed tags behind a gap
+     */
+    void setMaxTrackedTags(int maxTrackedTags) {
+        this.maxTrackedTags = Math.max(1, maxTrackedTags);
+    }
+
+    /**
+     * Marks the scan job as completed. It is acknowledged with the next flush.
+     *
+     * @param deliveryTag of the completed scan job
+     */
+    void complete(DeliveryTag deliveryTag) {
+        ChannelAcks channelAcks = getChannelAcks(deliveryTag.getConsumerId());
+        long completion = completions.incrementAndGet();
+        synchronized (channelAcks) {
+            if (deliveryTag.getTag() <= channelAcks.ackedUpTo) {
+                return;
+            }
+            if (channelAcks.completed.isEmpty()) {
+                channelAcks.oldestCompletedAt = System.currentTimeMillis();
+            }
+            channelAcks.completed.put(deliveryTag.getTag(), completion);
+            if (channelAcks.completed.size() < Math.min(batchSize, maxTrackedTags)) {
+                return;
+            }
+        }
+        flush(List.of(channelAcks), false);
+    }
+
+    /**
+     * Records that the scan job was already settled individually (e.g. rejected), so it does not
+     * block the bulk acknowledgement of the following tags.
+     *
+     * @param deliveryTag of the settled scan job
+     */
+    void settled(DeliveryTag deliveryTag) {
+        ChannelAcks channelAcks = getChannelAcks(deliveryTag.getConsumerId());
+        synchronized (channelAcks) {
+            if (deliveryTag.getTag() > channelAcks.ackedUpTo) {
+                channelAcks.settled.add(deliveryTag.getTag());
+            }
+        }
+    }
+
+    /**
+     * Forgets all tags of the consumer up to the given one, e.g. because the broker requeued them
+     * after the channel was closed.
+     *
+     * @param consumerId of the consumer
+     * @param tag last tag to forget
+     */
+    void discardUpTo(int consumerId, long tag) {
+        ChannelAcks channelAcks = getChannelAcks(consumerId);
+        synchronized (channelAcks) {
+            if (tag > channelAcks.ackedUpTo) {
+                channelAcks.ackedUpTo = tag;
+            }
+            channelAcks.completed.headMap(tag, true).clear();
+            channelAcks.settled.headSet(tag, true).clear();
+        }
+    }
+
+    /**
+     * Acknowledges all completed scan jobs up to the first gap, and those behind a gap that waited
+     * for too long.
+     */
+    void flush() {
+        flush(acksByConsumerId.values(), false);
+    }
+
+    private void flush(Collection<ChannelAcks> channels, boolean all) {
+        // scan jobs completed up to here are covered by the callback
+        long horizon = completions.get();
+        beforeAck.run();
+        long now = System.currentTimeMillis();
+        for (ChannelAcks channelAcks : channels) {
+            synchronized (channelAcks) {
+                if (!channelAcks.completed.isEmpty()) {
+                    channelAcks.ackContiguous(horizon);
+                    if (all
+                            || channelAcks.completed.size() >= maxTrackedTags
+                            || now - channelAcks.oldestCompletedAt >= maxGapAgeMs) {
+                        channelAcks.ackRemaining(horizon);
+                        if (!channelAcks.completed.isEmpty()) {
+                            // completed after the callback
+                            channelAcks.oldestCompletedAt = now;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Acknowledges all completed scan jobs and stops the timed flushes. */
+    void close() {
+        flushExecutor.shutdown();
+        flush(acksByConsumerId.values(), true);
+    }
+
+    private ChannelAcks getChannelAcks(int consumerId) {
+        return acksByConsumerId.computeIfAbsent(consumerId, ChannelAcks::new);
+    }
+
+    private class ChannelAcks {
+
+        private final int consumerId;
+
+        /** All tags up to this one are settled. */
+        private long ackedUpTo;
+
+        /** Completed but not yet acknowledged tags and the number of their completion. */
+        private final TreeMap<Long, Long> completed = new TreeMap<>();
+
+        /** Tags after {@link #ackedUpTo} that are already settled. */
+        private final TreeSet<Long> settled = new TreeSet<>();
+
+        /** Time at which the oldest of the completed tags was completed. */
+        private long oldestCompletedAt;
+
+        private ChannelAcks(int consumerId) {
+            this.consumerId = consumerId;
+        }
+
+        private void ackContiguous(long horizon) {
+            long next = ackedUpTo + 1;
+            long lastCompleted = -1;
+            while (true) {
+                Map.Entry<Long, Long> first = completed.firstEntry();
+                if (first != null && first.getKey() == next && first.getValue() <= horizon) {
+                    lastCompleted = completed.pollFirstEntry().getKey();
+                } else if (!settled.isEmpty() && settled.first() == next) {
+                    settled.pollFirst();
+                } else {
+                    break;
+                }
+                next++;
+            }
+            ackedUpTo = next - 1;
+            if (lastCompleted != -1) {
+                send(lastCompleted, true);
+            }
+        }
+
+        private void ackRemaining(long horizon) {
+            Iterator<Map.Entry<Long, Long>> iterator = completed.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Long> entry = iterator.next();
+                if (entry.getValue() <= horizon) {
+                    iterator.remove();
+                    settled.add(entry.getKey());
+                    send(entry.getKey(), false);
+                }
+            }
+        }
+
+        private void send(long tag, boolean multiple) {
+            try {
+                ackSender.sendAck(consumerId, tag, multiple);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Failed to send message acknowledgment: ", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.orchestration;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Pool of channels used for publishing. Channels are created lazily up to the maximum size. A
+ * borrowed channel is used by one thread only until it is released again. Channels that are closed
+ * because the connection was lost are kept, as they are recovered together with the connection.
+ */
+class ChannelPool {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final Connection connection;
+
+    private final int maxSize;
+
+    private final BlockingQueue<Channel> idleChannels = new LinkedBlockingQueue<>();
+
+    private final AtomicInteger createdChannels = new AtomicInteger();
+
+    ChannelPool(Connection connection, int maxSize) {
+        this.connection = connection;
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * Returns an idle channel, creates a new one if the maximum size is not yet reached or waits
+     * for a channel to be released.
+     *
+     * @return an open channel
+     * @throws IOException if a new channel could not be created
+     */
+    Channel borrow() throws IOException {
+        while (true) {
+            Channel channel = idleChannels.poll();
+            if (channel == null) {
+                if (createdChannels.incrementAndGet() <= maxSize) {
+                    return createChannel();
+                }
+                createdChannels.decrementAndGet();
+                try {
+                    channel = idleChannels.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for a channel", e);
+                }
+            }
+            if (isUsable(channel)) {
+                return channel;
+            }
+            // closed channels are dropped and replaced on demand
+            createdChannels.decrementAndGet();
+        }
+    }
+
+    void release(Channel channel) {
+        if (isUsable(channel)) {
+            idleChannels.offer(channel);
+        } else {
+            createdChannels.decrementAndGet();
+        }
+    }
+
+    void close() {
+        Channel channel;
+        while ((channel = idleChannels.poll()) != null) {
+            try {
+                if (channel.isOpen()) {
+                    channel.close();
+                }
+            } catch (IOException | TimeoutException e) {
+                LOGGER.error("Failed to close pooled channel: ", e);
+            }
+        }
+    }
+
+    private static boolean isUsable(Channel channel) {
+        return channel.isOpen() || RabbitMqOrchestrationProvider.isRecovering(channel);
+    }
+
+    private Channel createChannel() throws IOException {
+        try {
+            Channel channel = connection.createChannel();
+            if (channel == null) {
+                throw new IOException("No channel available on the connection");
+            }
+            return channel;
+        } catch (IOException e) {
+            createdChannels.decrementAndGet();
+            throw e;
+        }
+    }
+}
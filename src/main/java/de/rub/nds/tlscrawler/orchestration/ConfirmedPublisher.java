@@ -0,0 +1,158 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.orchestration;
+
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import de.rub.nds.tlscrawler.orchestration.RabbitMqOrchestrationProvider.ChannelAction;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Publishes single messages on a channel with publisher confirms enabled and reports the outcome of
+ * each message. It is used for messages that replace a received scan job, e.g. its next attempt, so
+ * the received scan job is only acknowledged once its replacement is safe at the broker.
+ *
+ * <p>The callbacks run on a dedicated thread, so they may publish or acknowledge messages
+ * themselves. A message whose channel is closed before it was confirmed counts as failed.
+ */
+class ConfirmedPublisher {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final Channel channel;
+
+    private final ConcurrentNavigableMap<Long, Outcome> unconfirmed = new ConcurrentSkipListMap<>();
+
+    private final ExecutorService callbackExecutor;
+
+    /**
+     * @param connection on which the channel of the publisher is created
+     * @throws IOException if the channel could not be created
+     */
+    ConfirmedPublisher(Connection connection) throws IOException {
+        this.channel = connection.createChannel();
+        if (channel == null) {
+            throw new IOException("No channel available on the connection");
+        }
+        this.callbackExecutor =
+                Executors.newSingleThreadExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "confirm-callbacks");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        channel.confirmSelect();
+        channel.addConfirmListener(
+                (seqNo, multiple) -> handleConfirm(seqNo, multiple, true),
+                (seqNo, multiple) -> handleConfirm(seqNo, multiple, false));
+        // sequence numbers start again on a recovered channel
+        channel.addShutdownListener(cause -> failUnconfirmed());
+    }
+
+    /**
+     * Publishes a message.
+     *
+     * @param action that publishes the message
+     * @param onConfirmed is called once the broker confirmed the message
+     * @param onFailed is called if the message could not be published or was nacked
+     */
+    void publish(ChannelAction action, Runnable onConfirmed, Runnable onFailed) {
+        Outcome outcome = new Outcome(onConfirmed, onFailed);
+        synchronized (channel) {
+            if (!channel.isOpen()) {
+                report(outcome, false);
+                return;
+            }
+            long seqNo = channel.getNextPublishSeqNo();
+            unconfirmed.put(seqNo, outcome);
+            try {
+                action.execute(channel);
+            } catch (IOException | AlreadyClosedException e) {
+                LOGGER.error("Failed to publish message: ", e);
+                if (unconfirmed.remove(seqNo) != null) {
+                    report(outcome, false);
+                }
+            }
+        }
+    }
+
+    void close() {
+        try {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+        } catch (IOException | TimeoutException | AlreadyClosedException e) {
+            LOGGER.error("Failed to close confirm channel: ", e);
+        }
+        callbackExecutor.shutdown();
+    }
+
+    private void handleConfirm(long seqNo, boolean multiple, boolean ack) {
+        if (multiple) {
+            Map<Long, Outcome> confirmed = unconfirmed.headMap(seqNo, true);
+            for (Long confirmedSeqNo : new ArrayList<>(confirmed.keySet())) {
+                confirm(confirmedSeqNo, ack);
+            }
+        } else {
+            confirm(seqNo, ack);
+        }
+    }
+
+    private void confirm(long seqNo, boolean ack) {
+        Outcome outcome = unconfirmed.remove(seqNo);
+        if (outcome != null) {
+            report(outcome, ack);
+        }
+    }
+
+    private void failUnconfirmed() {
+        for (Long seqNo : new ArrayList<>(unconfirmed.keySet())) {
+            confirm(seqNo, false);
+        }
+    }
+
+    private void report(Outcome outcome, boolean confirmed) {
+        Runnable callback = confirmed ? outcome.onConfirmed : outcome.onFailed;
+        try {
+            callbackExecutor.execute(
+                    () -> {
+                        try {
+                            callback.run();
+                        } catch (RuntimeException e) {
+                            LOGGER.error("Exception in confirm callback: ", e);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            // the executor was shut down
+            LOGGER.warn("Dropping confirm callback of a closed publisher");
+        }
+    }
+
+    private static class Outcome {
+
+        private final Runnable onConfirmed;
+
+        private final Runnable onFailed;
+
+        private Outcome(Runnable onConfirmed, Runnable onFailed) {
+            this.onConfirmed = onConfirmed;
+            this.onFailed = onFailed;
+        }
+    }
+}
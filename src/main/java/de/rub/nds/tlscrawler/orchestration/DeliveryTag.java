@@ -0,0 +1,39 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.orchestration;
+
+/**
+ * Identifies a delivered scan job. Delivery tags are only unique per consumer channel, so the tag
+ * is paired with the id of the consumer that received the scan job. The acknowledgement has to be
+ * sent on the same channel.
+ */
+public class DeliveryTag {
+
+    private final int consumerId;
+
+    private final long tag;
+
+    public DeliveryTag(int consumerId, long tag) {
+        this.consumerId = consumerId;
+        this.tag = tag;
+    }
+
+    public int getConsumerId() {
+        return consumerId;
+    }
+
+    public long getTag() {
+        return tag;
+    }
+
+    @Override
+    public String toString() {
+        return consumerId + ":" + tag;
+    }
+}
@@ -8,10 +8,10 @@
  */
 package de.rub.nds.tlscrawler.orchestration;
 
-import de.rub.nds.tlscrawler.data.ScanJob;
+import de.rub.nds.tlscrawler.data.ProgressDelta;
 
 @FunctionalInterface
 public interface DoneNotificationConsumer {
 
-    void consumeDoneNotification(String consumerTag, ScanJob scanJob);
+    void consumeDoneNotification(String consumerTag, ProgressDelta progressDelta);
 }
@@ -0,0 +1,112 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.orchestration;
+
+import de.rub.nds.tlscrawler.data.ScanJob;
+import java.io.IOException;
+
+/**
+ * Orchestration provider interface. Distributes scan jobs from the controller to the workers and
+ * reports the progress of the workers back to the controller.
+ */
+public interface IOrchestrationProvider {
+
+    void submitScanJob(ScanJob scanJob);
+
+    /**
+     * Creates a publisher for the scan jobs of a bulk scan.
+     *
+     * @param batchSize number of scan jobs that are published at once
+     * @param maxInFlight maximum number of published but not yet confirmed scan jobs
+     * @return the publisher
+     * @throws IOException if the publisher could not be created
+     */
+    IScanJobPublisher createScanJobPublisher(int batchSize, int maxInFlight) throws IOException;
+
+    /**
+     * Registers consumers for scan jobs.
+     *
+     * @param scanJobConsumer that is called for each received scan job
+     * @param consumerCount number of consumers
+     * @param prefetchCount maximum number of unacknowledged scan jobs over all consumers
+     */
+    void registerScanJobConsumer(
+            ScanJobConsumer scanJobConsumer, int consumerCount, int prefetchCount);
+
+    /**
+     * Stops the delivery of scan jobs to the registered consumers. Scan jobs that were already
+     * delivered can still be acknowledged or requeued.
+     */
+    void cancelScanJobConsumers();
+
+    /**
+     * Changes the prefetch count of the registered scan job consumers.
+     *
+     * @param prefetchCount maximum number of unacknowledged scan jobs over all consumers
+     */
+    void setPrefetchCount(int prefetchCount);
+
+    /**
+     * Acknowledges a received scan job.
+     *
+     * @param deliveryTag of the scan job
+     */
+    void sendAck(DeliveryTag deliveryTag);
+
+    /**
+     * Returns a received scan job to the queue without processing it, so it can be delivered to
+     * another worker.
+     *
+     * @param scanJob the received scan job
+     * @param deliveryTag of the scan job
+     */
+    void requeueScanJob(ScanJob scanJob, DeliveryTag deliveryTag);
+
+    /**
+     * Checks whether a received scan job will be delivered again, e.g. because the connection to
+     * the broker was lost in the meantime. The outcome of a stale scan job must not be reported.
+     *
+     * @param deliveryTag of the scan job
+     * @return true if the scan job is stale
+     */
+    boolean isStale(DeliveryTag deliveryTag);
+
+    void registerDoneNotificationConsumer(DoneNotificationConsumer doneNotificationConsumer);
+
+    /**
+     * Notifies the controller that a received scan job is done. The scan job has to be acknowledged
+     * afterwards.
+     *
+     * @param scanJob that is done
+     * @param deliveryTag of the scan job
+     */
+    void notifyOfDoneScanJob(ScanJob scanJob, DeliveryTag deliveryTag);
+
+    /**
+     * Submits the next attempt of a failed scan job after a delay that doubles with every attempt.
+     * The failed scan job is acknowledged once its next attempt was submitted, or requeued if that
+     * is not possible.
+     *
+     * @param scanJob the failed scan job
+     * @param deliveryTag of the failed scan job
+     */
+    void retryScanJob(ScanJob scanJob, DeliveryTag deliveryTag);
+
+    /**
+     * Moves a retried scan job that exhausted its attempts to the dead letter queue and notifies
+     * the controller that it is done, if it is monitored. The scan job is acknowledged once it was
+     * moved, or requeued if that is not possible.
+     *
+     * @param scanJob that failed for the last time
+     * @param deliveryTag of the scan job
+     */
+    void deadLetterScanJob(ScanJob scanJob, DeliveryTag deliveryTag);
+
+    void closeConnection();
+}
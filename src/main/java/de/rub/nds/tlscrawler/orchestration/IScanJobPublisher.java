@@ -0,0 +1,31 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.orchestration;
+
+import de.rub.nds.tlscrawler.data.ScanJob;
+import java.util.List;
+
+/** Publishes the scan jobs of a bulk scan. Implementations can be used from multiple threads. */
+public interface IScanJobPublisher {
+
+    void publish(ScanJob scanJob);
+
+    /**
+     * Publishes the remaining scan jobs and waits until all of them are published.
+     *
+     * @return the scan jobs that could not be published
+     */
+    List<ScanJob> finish();
+
+    /**
+     * @return number of published scan jobs for which it is not known whether they were delivered
+     *     to the workers, they count as published
+     */
+    int getUnconfirmedScanJobs();
+}
@@ -0,0 +1,357 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.orchestration;
+
+import de.rub.nds.tlscrawler.data.ProgressDelta;
+import de.rub.nds.tlscrawler.data.ScanJob;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Orchestration provider for running controller and worker in the same process. Scan jobs and done
+ * notifications are handed over through bounded lock-free queues without any serialization.
+ *
+ * <p>Submitting blocks while the scan job queue is full. The number of scan jobs that are delivered
+ * but not yet acknowledged is limited by the prefetch count, like with RabbitMq. Done notifications
+ * are delivered from a single thread, so the done notification consumer does not have to be
+ * thread-safe. Idle dispatchers and blocked submitters wait until they are signalled, so an idle
+ * provider does not use any CPU.
+ */
+public class LocalOrchestrationProvider implements IOrchestrationProvider {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1 << 16;
+
+    public static final long DEFAULT_RETRY_DELAY_MS = 60000;
+
+    private final MpmcArrayQueue<ScanJob> scanJobQueue;
+
+    private final MpmcArrayQueue<ProgressDelta> doneNotificationQueue;
+
+    /** Signalled when a scan job can be delivered, i.e. one was queued or acknowledged. */
+    private final Signal scanJobSignal = new Signal();
+
+    /** Signalled when a done notification was queued. */
+    private final Signal doneNotificationSignal = new Signal();
+
+    /** Signalled when space in one of the queues became available. */
+    private final Signal spaceSignal = new Signal();
+
+    private final List<Thread> dispatcherThreads = new CopyOnWriteArrayList<>();
+
+    private final long retryDelay;
+
+    /** Delays the next attempts of failed scan jobs and returns requeued scan jobs. */
+    private final ScheduledExecutorService retryExecutor;
+
+    private final AtomicLong deliveryTagCounter = new AtomicLong();
+
+    /** Number of delivered but not yet acknowledged scan jobs. */
+    private final AtomicInteger unacknowledged = new AtomicInteger();
+
+    private volatile int prefetchCount = 1;
+
+    private volatile boolean closed;
+
+    private volatile boolean scanJobConsumersCancelled;
+
+    public LocalOrchestrationProvider() {
+        this(DEFAULT_QUEUE_CAPACITY, DEFAULT_RETRY_DELAY_MS);
+    }
+
+    /**
+     * @param queueCapacity capacity of the scan job queue and of the done notification queue
+     * @param retryDelay delay in ms before the second attempt of a failed scan job
+     */
+    public LocalOrchestrationProvider(int queueCapacity, long retryDelay) {
+        this.scanJobQueue = new MpmcArrayQueue<>(queueCapacity);
+        this.doneNotificationQueue = new MpmcArrayQueue<>(queueCapacity);
+        this.retryDelay = retryDelay;
+        this.retryExecutor =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "local-retry-scheduler");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    @Override
+    public void submitScanJob(ScanJob scanJob) {
+        if (offer(scanJobQueue, scanJob, "Failed to submit ScanJob: ")) {
+            scanJobSignal.signal();
+        }
+    }
+
+    @Override
+    public IScanJobPublisher createScanJobPublisher(int batchSize, int maxInFlight) {
+        // the queue is bounded and in-process, there is nothing to batch or to confirm
+        return new IScanJobPublisher() {
+            @Override
+            public void publish(ScanJob scanJob) {
+                submitScanJob(scanJob);
+            }
+
+            @Override
+            public List<ScanJob> finish() {
+                return List.of();
+            }
+
+            @Override
+            public int getUnconfirmedScanJobs() {
+                return 0;
+            }
+        };
+    }
+
+    @Override
+    public void registerScanJobConsumer(
+            ScanJobConsumer scanJobConsumer, int consumerCount, int prefetchCount) {
+        setPrefetchCount(prefetchCount);
+        for (int consumerId = 0; consumerId < Math.max(1, consumerCount); consumerId++) {
+            int id = consumerId;
+            startDispatcher(
+                    "local-scan-job-dispatcher-" + id, () -> dispatchScanJobs(id, scanJobConsumer));
+        }
+    }
+
+    @Override
+    public void cancelScanJobConsumers() {
+        scanJobConsumersCancelled = true;
+        scanJobSignal.signal();
+    }
+
+    @Override
+    public void setPrefetchCount(int prefetchCount) {
+        this.prefetchCount = Math.max(1, prefetchCount);
+        scanJobSignal.signal();
+    }
+
+    @Override
+    public void sendAck(DeliveryTag deliveryTag) {
+        unacknowledged.decrementAndGet();
+        scanJobSignal.signal();
+    }
+
+    @Override
+    public void requeueScanJob(ScanJob scanJob, DeliveryTag deliveryTag) {
+        unacknowledged.decrementAndGet();
+        scanJobSignal.signal();
+        // submitting may block while the queue is full, which must not stall the dispatcher
+        retryExecutor.execute(() -> submitScanJob(scanJob));
+    }
+
+    @Override
+    public boolean isStale(DeliveryTag deliveryTag) {
+        return false;
+    }
+
+    @Override
+    public void registerDoneNotificationConsumer(
+            DoneNotificationConsumer doneNotificationConsumer) {
+        startDispatcher(
+                "local-done-notification-dispatcher",
+                () -> dispatchDoneNotifications(doneNotificationConsumer));
+    }
+
+    @Override
+    public void notifyOfDoneScanJob(ScanJob scanJob, DeliveryTag deliveryTag) {
+        offerProgressDelta(ProgressDelta.of(scanJob));
+    }
+
+    @Override
+    public void retryScanJob(ScanJob scanJob, DeliveryTag deliveryTag) {
+        ScanJob nextAttempt = scanJob.nextAttempt();
+        retryExecutor.schedule(
+                () -> submitScanJob(nextAttempt),
+                RetryBackoff.getRetryDelay(retryDelay, nextAttempt.getAttempt()),
+                TimeUnit.MILLISECONDS);
+        sendAck(deliveryTag);
+    }
+
+    /**
+     * There is no dead letter queue in-process, the scan job is only logged and counted on its bulk
+     * scan.
+     *
+     * @param scanJob that failed for the last time
+     * @param deliveryTag of the scan job
+     */
+    @Override
+    public void deadLetterScanJob(ScanJob scanJob, DeliveryTag deliveryTag) {
+        LOGGER.warn(
+                "Giving up on '{}' after {} attempts ({})",
+                scanJob.getScanTarget(),
+                scanJob.getAttempt(),
+                scanJob.getStatus());
+        if (scanJob.isMonitored()) {
+            offerProgressDelta(ProgressDelta.of(scanJob, true));
+        }
+        sendAck(deliveryTag);
+    }
+
+    private void offerProgressDelta(ProgressDelta progressDelta) {
+        if (offer(doneNotificationQueue, progressDelta, "Failed to send done notification: ")) {
+            doneNotificationSignal.signal();
+        }
+    }
+
+    /**
+     * Adds the element to the queue, waits for space while the queue is full.
+     *
+     * @return false if the provider was closed or the thread was interrupted before
+     */
+    private <T> boolean offer(MpmcArrayQueue<T> queue, T element, String errorMessage) {
+        while (true) {
+            long seen = spaceSignal.current();
+            if (queue.offer(element)) {
+                return true;
+            }
+            if (closed) {
+                LOGGER.error("{}provider is closed", errorMessage);
+                return false;
+            }
+            try {
+                spaceSignal.await(seen);
+            } catch (InterruptedException e) {
+                LOGGER.error("{}interrupted while the queue is full", errorMessage);
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void closeConnection() {
+        closed = true;
+        retryExecutor.shutdownNow();
+        scanJobSignal.signal();
+        doneNotificationSignal.signal();
+        spaceSignal.signal();
+        dispatcherThreads.forEach(Thread::interrupt);
+    }
+
+    private void startDispatcher(String name, Runnable dispatcher) {
+        Thread thread = new Thread(dispatcher, name);
+        thread.setDaemon(true);
+        dispatcherThreads.add(thread);
+        thread.start();
+    }
+
+    private void dispatchScanJobs(int consumerId, ScanJobConsumer scanJobConsumer) {
+        while (!closed && !scanJobConsumersCancelled) {
+            long seen = scanJobSignal.current();
+            if (!tryReserveDelivery()) {
+                awaitQuietly(scanJobSignal, seen);
+                continue;
+            }
+            ScanJob scanJob = scanJobQueue.poll();
+            if (scanJob == null) {
+                unacknowledged.decrementAndGet();
+                awaitQuietly(scanJobSignal, seen);
+                continue;
+            }
+            spaceSignal.signal();
+            try {
+                scanJobConsumer.consumeScanJob(
+                        scanJob, new DeliveryTag(consumerId, deliveryTagCounter.incrementAndGet()));
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to handle ScanJob: ", e);
+                unacknowledged.decrementAndGet();
+            }
+        }
+    }
+
+    /** Counts a delivery if this does not exceed the prefetch count. */
+    private boolean tryReserveDelivery() {
+        int current = unacknowledged.get();
+        while (current < prefetchCount) {
+            if (unacknowledged.compareAndSet(current, current + 1)) {
+                return true;
+            }
+            current = unacknowledged.get();
+        }
+        return false;
+    }
+
+    private void dispatchDoneNotifications(DoneNotificationConsumer doneNotificationConsumer) {
+        while (!closed) {
+            long seen = doneNotificationSignal.current();
+            ProgressDelta progressDelta = doneNotificationQueue.poll();
+            if (progressDelta == null) {
+                awaitQuietly(doneNotificationSignal, seen);
+                continue;
+            }
+            spaceSignal.signal();
+            try {
+                doneNotificationConsumer.consumeDoneNotification(
+                        Thread.currentThread().getName(), progressDelta);
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to handle done notification: ", e);
+            }
+        }
+    }
+
+    /**
+     * Waits for the signal. Dispatchers are only interrupted on close, which the dispatcher loops
+     * check, so the interrupt is not kept.
+     */
+    private static void awaitQuietly(Signal signal, long seen) {
+        try {
+            signal.await(seen);
+        } catch (InterruptedException e) {
+            LOGGER.debug("Dispatcher was interrupted");
+        }
+    }
+
+    /**
+     * Wakes up threads that wait for a condition. Waiters read the current generation before they
+     * check their condition and only wait while no signal was sent since then, so no signal is
+     * lost. Signalling only takes the lock if a thread is waiting.
+     */
+    private static final class Signal {
+
+        private final AtomicLong generation = new AtomicLong();
+
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        long current() {
+            return generation.get();
+        }
+
+        void await(long seen) throws InterruptedException {
+            waiters.incrementAndGet();
+            try {
+                synchronized (this) {
+                    while (generation.get() == seen) {
+                        wait();
+                    }
+                }
+            } finally {
+                waiters.decrementAndGet();
+            }
+        }
+
+        void signal() {
+            generation.incrementAndGet();
+            if (waiters.get() > 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.orchestration;
+
+import de.rub.nds.tlscrawler.constant.Status;
+import de.rub.nds.tlscrawler.data.ProgressDelta;
+import de.rub.nds.tlscrawler.data.ScanJob;
+import de.rub.nds.tlscrawler.data.ScanTarget;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Compact, versioned binary encoding of the messages exchanged between controller and workers.
+ *
+ * <p>In contrast to java serialization no class descriptors are written and the {@link
+ * de.rub.nds.tlscrawler.data.ScanConfig} is not inlined. It is the same for every scan job of a
+ * bulk scan and is therefore only referenced by the bulk scan id. Decoded scan jobs have no scan
+ * config set; the receiver is responsible for resolving it.
+ */
+public final class MessageCodec {
+
+    /** Content type of scan jobs encoded with this codec. */
+    public static final String SCAN_JOB_CONTENT_TYPE = "application/vnd.tls-crawler.scan-job";
+
+    /** Content type of progress notifications encoded with this codec. */
+    public static final String PROGRESS_DELTA_CONTENT_TYPE =
+            "application/vnd.tls-crawler.progress-delta";
+
+    /** Content type of messages encoded with java serialization (legacy format). */
+    public static final String JAVA_SERIALIZED_CONTENT_TYPE =
+            "application/x-java-serialized-object";
+
+    /**
+     * Version 2 added attempt and maximum attempts of the scan job, version 3 added the scan
+     * timeout, version 4 the publish id.
+     */
+    private static final byte SCAN_JOB_VERSION = 4;
+
+    /**
+     * Version 2 added the number of dead lettered scan jobs, version 3 the publish ids and outcomes
+     * of the done scan jobs.
+     */
+    private static final byte PROGRESS_DELTA_VERSION = 3;
+
+    private MessageCodec() {}
+
+    public static byte[] encodeScanJob(ScanJob scanJob) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(SCAN_JOB_VERSION);
+            writeString(out, scanJob.getBulkScanId());
+            writeString(out, scanJob.getDbName());
+            writeString(out, scanJob.getCollectionName());
+            out.writeBoolean(scanJob.isMonitored());
+            out.writeByte(scanJob.getStatus() != null ? scanJob.getStatus().ordinal() : -1);
+            writeScanTarget(out, scanJob.getScanTarget());
+            writeVarInt(out, scanJob.getAttempt());
+            writeVarInt(out, scanJob.getMaxAttempts());
+            writeVarInt(out, scanJob.getScanTimeout());
+            writeVarInt(out, scanJob.getPublishId());
+        } catch (IOException e) {
+            // writing to a byte array can not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a scan job that was encoded with {@link #encodeScanJob(ScanJob)}.
+     *
+     * @param bytes the encoded scan job
+     * @return the scan job without scan config
+     * @throws IOException if the bytes are not a valid encoding of a supported version
+     */
+    public static ScanJob decodeScanJob(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        byte version = in.readByte();
+        if (version < 1 || version > SCAN_JOB_VERSION) {
+            throw new IOException("Unsupported scan job encoding version " + version);
+        }
+        String bulkScanId = readString(in);
+        String dbName = readString(in);
+        String collectionName = readString(in);
+        boolean monitored = in.readBoolean();
+        Status status = readStatus(in);
+        ScanTarget scanTarget = readScanTarget(in);
+        ScanJob scanJob =
+                new ScanJob(
+                        scanTarget, null, bulkScanId, monitored, dbName, collectionName, status);
+        if (version >= 2) {
+            scanJob.setAttempt(readVarInt(in));
+            scanJob.setMaxAttempts(readVarInt(in));
+        }
+        if (version >= 3) {
+            scanJob.setScanTimeout(readVarInt(in));
+        }
+        if (version >= 4) {
+            scanJob.setPublishId(readVarInt(in));
+        }
+        return scanJob;
+    }
+
+    public static byte[] encodeProgressDelta(ProgressDelta progressDelta) {
+        ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(48 + 4 * progressDelta.getPublishIds().length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(PROGRESS_DELTA_VERSION);
+            writeString(out, progressDelta.getBulkScanId());
+            writeVarInt(out, progressDelta.getDoneScanJobs());
+            writeVarInt(out, progressDelta.getScanTimeouts());
+            writeVarInt(out, progressDelta.getResultsWritten());
+            writeVarInt(out, progressDelta.getDeadLettered());
+            int[] publishIds = progressDelta.getPublishIds();
+            writeVarInt(out, publishIds.length);
+            for (int i = 0; i < publishIds.length; i++) {
+                writeVarInt(out, publishIds[i]);
+                out.writeByte(progressDelta.getOutcomes()[i]);
+            }
+        } catch (IOException e) {
+            // writing to a byte array can not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a progress delta that was encoded with {@link #encodeProgressDelta(ProgressDelta)}.
+     *
+     * @param bytes the encoded progress delta
+     * @return the progress delta
+     * @throws IOException if the bytes are not a valid encoding of a supported version
+     */
+    public static ProgressDelta decodeProgressDelta(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        byte version = in.readByte();
+        if (version < 1 || version > PROGRESS_DELTA_VERSION) {
+            throw new IOException("Unsupported progress delta encoding version " + version);
+        }
+        String bulkScanId = readString(in);
+        int doneScanJobs = readVarInt(in);
+        int scanTimeouts = readVarInt(in);
+        int resultsWritten = readVarInt(in);
+        int deadLettered = version >= 2 ? readVarInt(in) : 0;
+        int count = version >= 3 ? readVarInt(in) : 0;
+        // each listed scan job takes at least two bytes
+        if (count < 0 || count > bytes.length / 2) {
+            throw new IOException("Invalid number of publish ids " + count);
+        }
+        int[] publishIds = new int[count];
+        byte[] outcomes = new byte[count];
+        for (int i = 0; i < count; i++) {
+            publishIds[i] = readVarInt(in);
+            outcomes[i] = in.readByte();
+        }
+        return new ProgressDelta(
+                bulkScanId,
+                doneScanJobs,
+                scanTimeouts,
+                resultsWritten,
+                deadLettered,
+                publishIds,
+                outcomes);
+    }
+
+    private static void writeScanTarget(DataOutput out, ScanTarget scanTarget) throws IOException {
+        writeString(out, scanTarget.getIp());
+        writeString(out, scanTarget.getHostname());
+        out.writeChar(scanTarget.getPort());
+        writeVarInt(out, scanTarget.getTrancoRank());
+    }
+
+    private static ScanTarget readScanTarget(DataInput in) throws IOException {
+        ScanTarget scanTarget = new ScanTarget();
+        scanTarget.setIp(readString(in));
+        scanTarget.setHostname(readString(in));
+        scanTarget.setPort(in.readChar());
+        scanTarget.setTrancoRank(readVarInt(in));
+        return scanTarget;
+    }
+
+    private static Status readStatus(DataInput in) throws IOException {
+        byte ordinal = in.readByte();
+        if (ordinal < 0) {
+            return null;
+        }
+        if (ordinal >= Status.values().length) {
+            throw new IOException("Unknown status " + ordinal);
+        }
+        return Status.values()[ordinal];
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+}
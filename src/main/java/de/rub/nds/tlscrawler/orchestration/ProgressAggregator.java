@@ -0,0 +1,123 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.orchestration;
+
+import de.rub.nds.tlscrawler.data.ProgressDelta;
+import de.rub.nds.tlscrawler.data.ScanJob;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the done scan jobs per bulk scan until they are sent as {@link ProgressDelta}s. Scan
+ * jobs with a publish id are listed with their outcome, the others are only counted. A scan job
+ * that is delivered again, e.g. because the worker died before its acknowledgement, may be reported
+ * twice; the controller counts each publish id only once.
+ */
+class ProgressAggregator {
+
+    private final Map<String, Counters> countersByBulkScanId = new ConcurrentHashMap<>();
+
+    /**
+     * Counts a done scan job. It has to be recorded before the scan job is acknowledged, so its
+     * progress is sent before or with the acknowledgement and is not lost if the worker dies.
+     *
+     * @param scanJob that is done
+     * @param deadLettered whether the scan job was moved to the dead letter queue
+     */
+    void record(ScanJob scanJob, boolean deadLettered) {
+        add(ProgressDelta.of(scanJob, deadLettered));
+    }
+
+    /**
+     * Counts a delta again that could not be sent, so it is sent with the next drain.
+     *
+     * @param progressDelta that was drained before
+     */
+    void restore(ProgressDelta progressDelta) {
+        add(progressDelta);
+    }
+
+    private void add(ProgressDelta progressDelta) {
+        countersByBulkScanId
+                .computeIfAbsent(progressDelta.getBulkScanId(), id -> new Counters())
+                .add(progressDelta);
+    }
+
+    /**
+     * Resets all counters.
+     *
+     * @return the counted scan jobs of all bulk scans with at least one scan job since the last
+     *     call
+     */
+    List<ProgressDelta> drain() {
+        List<ProgressDelta> deltas = new ArrayList<>();
+        for (Map.Entry<String, Counters> entry : countersByBulkScanId.entrySet()) {
+            ProgressDelta progressDelta = entry.getValue().drain(entry.getKey());
+            if (!progressDelta.isEmpty()) {
+                deltas.add(progressDelta);
+            }
+        }
+        return deltas;
+    }
+
+    /** Done scan jobs of a bulk scan, a delta is always drained as a whole. */
+    private static class Counters {
+
+        private int doneScanJobs;
+
+        private int scanTimeouts;
+
+        private int resultsWritten;
+
+        private int deadLettered;
+
+        private int[] publishIds = new int[16];
+
+        private byte[] outcomes = new byte[16];
+
+        private int identified;
+
+        synchronized void add(ProgressDelta progressDelta) {
+            doneScanJobs += progressDelta.getDoneScanJobs();
+            scanTimeouts += progressDelta.getScanTimeouts();
+            resultsWritten += progressDelta.getResultsWritten();
+            deadLettered += progressDelta.getDeadLettered();
+            int[] addedIds = progressDelta.getPublishIds();
+            if (identified + addedIds.length > publishIds.length) {
+                int capacity = Math.max(2 * publishIds.length, identified + addedIds.length);
+                publishIds = Arrays.copyOf(publishIds, capacity);
+                outcomes = Arrays.copyOf(outcomes, capacity);
+            }
+            System.arraycopy(addedIds, 0, publishIds, identified, addedIds.length);
+            System.arraycopy(progressDelta.getOutcomes(), 0, outcomes, identified, addedIds.length);
+            identified += addedIds.length;
+        }
+
+        synchronized ProgressDelta drain(String bulkScanId) {
+            ProgressDelta progressDelta =
+                    new ProgressDelta(
+                            bulkScanId,
+                            doneScanJobs,
+                            scanTimeouts,
+                            resultsWritten,
+                            deadLettered,
+                            Arrays.copyOf(publishIds, identified),
+                            Arrays.copyOf(outcomes, identified));
+            doneScanJobs = 0;
+            scanTimeouts = 0;
+            resultsWritten = 0;
+            deadLettered = 0;
+            identified = 0;
+            return progressDelta;
+        }
+    }
+}
@@ -8,18 +8,34 @@
  */
 package de.rub.nds.tlscrawler.orchestration;
 
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.ShutdownSignalException;
 import de.rub.nds.tlscrawler.config.delegate.RabbitMqDelegate;
+import de.rub.nds.tlscrawler.data.ProgressDelta;
 import de.rub.nds.tlscrawler.data.ScanJob;
+import de.rub.nds.tlscrawler.data.ScanTarget;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.SerializationException;
 import org.apache.commons.lang3.SerializationUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -27,20 +43,130 @@ import org.apache.logging.log4j.Logger;
 /**
  * Provides all methods required for the communication with RabbitMQ for the controller and the
  * worker.
+ *
+ * <p>Unless disabled, the connection recovers automatically from network failures and broker
+ * restarts. Queues, channels, prefetch counts and consumers are restored by the client library.
+ * Messages published while the connection is down are buffered up to a limit and published after
+ * the recovery, publishing never waits for the recovery. Scan jobs that were delivered before the
+ * connection was lost are requeued by the broker, so their delivery tags are stale: they are
+ * neither acknowledged nor reported as done.
  */
-public class RabbitMqOrchestrationProvider {
+public class RabbitMqOrchestrationProvider implements IOrchestrationProvider {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
     private static final String SCAN_JOB_QUEUE = "scan-job-queue";
     private static final String DONE_NOTIFY_QUEUE = "done-notify-queue";
+    private static final String DEAD_LETTER_QUEUE = "scan-job-dead-letter-queue";
+    /** Retry queues are named by their delay, as the message TTL is part of the queue. */
+    private static final String RETRY_QUEUE_PREFIX = "scan-job-retry-";
+
+    private static final AMQP.BasicProperties SCAN_JOB_PROPERTIES =
+            new AMQP.BasicProperties.Builder()
+                    .contentType(MessageCodec.SCAN_JOB_CONTENT_TYPE)
+                    .build();
+    private static final AMQP.BasicProperties PROGRESS_DELTA_PROPERTIES =
+            new AMQP.BasicProperties.Builder()
+                    .contentType(MessageCodec.PROGRESS_DELTA_CONTENT_TYPE)
+                    .build();
+    private static final AMQP.BasicProperties JAVA_SERIALIZED_PROPERTIES =
+            new AMQP.BasicProperties.Builder()
+                    .contentType(MessageCodec.JAVA_SERIALIZED_CONTENT_TYPE)
+                    .build();
+
+    private static final int PERSISTENT_DELIVERY_MODE = 2;
+
+    private final boolean legacyEncoding;
+
+    private final long ackFlushInterval;
+
+    private final int ackBatchSize;
+
+    private final long retryDelay;
+
+    private final Set<String> declaredRetryQueues = ConcurrentHashMap.newKeySet();
+
+    /** Maximum priority of the scan job queue, 0 if it is not a priority queue. */
+    private final int priorityLevels;
+
+    /** Properties of published scan jobs, indexed by priority. */
+    private final AMQP.BasicProperties[] scanJobProperties;
+
+    private final AMQP.BasicProperties[] javaSerializedProperties;
+
+    private final AMQP.BasicProperties progressDeltaProperties;
+
+    /** Whether queues and messages survive a broker restart. */
+    private final boolean durable;
+
+    /** Maximum length of the dead letter queue, the oldest scan jobs are dropped beyond it. */
+    private final int deadLetterQueueLength;
+
+    private final boolean automaticRecovery;
+
+    /** Publishes that could not be sent because the connection is down. */
+    private final BlockingQueue<ChannelAction> recoveryBuffer;
 
     private Connection connection;
 
-    private Channel channel;
+    /** Channels used for publishing scan jobs and done notifications. */
+    private ChannelPool publishChannelPool;
+
+    /** Channel of each scan job consumer, indexed by consumer id. */
+    private final List<Channel> consumerChannels = new CopyOnWriteArrayList<>();
+
+    /** Highest delivery tag received by each scan job consumer, indexed by consumer id. */
+    private final List<AtomicLong> lastDeliveryTags = new CopyOnWriteArrayList<>();
+
+    /** Consumer tags of the scan job consumers, by consumer id. */
+    private final List<String> consumerTags = new CopyOnWriteArrayList<>();
+
+    /** Prefetch count of each consumer, guarded by the consumer channels. */
+    private int prefetchPerConsumer;
+
+    /** Set once the scan job consumers were cancelled, guarded by the consumer channels. */
+    private boolean consumersCancelled;
+
+    /** Delivery tags up to this one were requeued by the broker, indexed by consumer id. */
+    private final List<AtomicLong> staleDeliveryTags = new CopyOnWriteArrayList<>();
+
+    private Channel doneNotificationChannel;
+
+    /** Publishes retries and dead letters of received scan jobs with publisher confirms. */
+    private ConfirmedPublisher replacementPublisher;
+
+    /** Acknowledges completed scan jobs in bulk, only used if scan job consumers are registered. */
+    private AckCoalescer ackCoalescer;
+
+    /**
+     * Counts done scan jobs until they are sent with the next acknowledgements, only used if scan
+     * job consumers are registered.
+     */
+    private ProgressAggregator progressAggregator;
 
     public RabbitMqOrchestrationProvider(RabbitMqDelegate rabbitMqDelegate) {
+        this.legacyEncoding = rabbitMqDelegate.isRabbitMqLegacyEncoding();
+        this.ackFlushInterval = rabbitMqDelegate.getRabbitMqAckFlushInterval();
+        this.ackBatchSize = rabbitMqDelegate.getRabbitMqAckBatchSize();
+        this.retryDelay = rabbitMqDelegate.getRabbitMqRetryDelay();
+        this.priorityLevels = Math.max(0, rabbitMqDelegate.getRabbitMqPriorityLevels());
+        this.durable = rabbitMqDelegate.isRabbitMqDurable();
+        this.deadLetterQueueLength =
+                Math.max(1, rabbitMqDelegate.getRabbitMqDeadLetterQueueLength());
+        this.scanJobProperties = withPriorities(persistent(SCAN_JOB_PROPERTIES), priorityLevels);
+        this.javaSerializedProperties =
+                withPriorities(persistent(JAVA_SERIALIZED_PROPERTIES), priorityLevels);
+        this.progressDeltaProperties = persistent(PROGRESS_DELTA_PROPERTIES);
+        this.automaticRecovery = rabbitMqDelegate.getRabbitMqRecoveryInterval() > 0;
+        this.recoveryBuffer =
+                new ArrayBlockingQueue<>(
+                        Math.max(1, rabbitMqDelegate.getRabbitMqRecoveryBufferSize()));
         ConnectionFactory factory = new ConnectionFactory();
+        factory.setAutomaticRecoveryEnabled(automaticRecovery);
+        factory.setTopologyRecoveryEnabled(automaticRecovery);
+        if (automaticRecovery) {
+            factory.setNetworkRecoveryInterval(rabbitMqDelegate.getRabbitMqRecoveryInterval());
+        }
         factory.setHost(rabbitMqDelegate.getRabbitMqHost());
         factory.setPort(rabbitMqDelegate.getRabbitMqPort());
         if (rabbitMqDelegate.getRabbitMqUser() != null) {
@@ -66,74 +192,607 @@ public class RabbitMqOrchestrationProvider {
         }
         try {
             this.connection = factory.newConnection();
-            this.channel = connection.createChannel();
-            this.channel.queueDeclare(SCAN_JOB_QUEUE, false, false, false, null);
-            this.channel.queueDeclare(DONE_NOTIFY_QUEUE, false, false, false, null);
+            this.connection.addShutdownListener(
+                    cause -> {
+                        if (!cause.isInitiatedByApplication()) {
+                            LOGGER.error(
+                                    "Lost connection to RabbitMQ{}: {}",
+                                    automaticRecovery ? ", trying to recover" : "",
+                                    cause.getMessage());
+                            handleConnectionLoss();
+                        }
+                    });
+            onRecovery(this.connection, this::handleConnectionRecovery);
+            this.publishChannelPool =
+                    new ChannelPool(connection, rabbitMqDelegate.getRabbitMqChannelPoolSize());
+            Channel channel = publishChannelPool.borrow();
+            channel.queueDeclare(
+                    SCAN_JOB_QUEUE,
+                    durable,
+                    false,
+                    false,
+                    priorityLevels > 0 ? Map.of("x-max-priority", priorityLevels) : null);
+            channel.queueDeclare(DONE_NOTIFY_QUEUE, durable, false, false, null);
+            // nothing consumes the dead letter queue, so it is bounded
+            channel.queueDeclare(
+                    DEAD_LETTER_QUEUE,
+                    durable,
+                    false,
+                    false,
+                    Map.of("x-max-length", deadLetterQueueLength, "x-overflow", "drop-head"));
+            publishChannelPool.release(channel);
         } catch (IOException | TimeoutException e) {
             LOGGER.error("Could not connect to RabbitMQ: ", e);
             throw new RuntimeException();
         }
     }
 
+    @Override
     public void submitScanJob(ScanJob scanJob) {
+        publish(channel -> publishScanJob(channel, scanJob), "Failed to submit ScanJob: ");
+    }
+
+    /** Action on a publish channel, which can be repeated after a connection recovery. */
+    @FunctionalInterface
+    interface ChannelAction {
+        void execute(Channel channel) throws IOException;
+    }
+
+    /**
+     * Executes the action on a pooled channel. If the connection is down, the action is buffered
+     * and executed after the connection was recovered. It does not wait for space in the buffer.
+     *
+     * @param action to execute
+     * @param errorMessage logged if the action fails
+     * @return false if the action failed or could not be buffered
+     */
+    private boolean publish(ChannelAction action, String errorMessage) {
+        if (automaticRecovery && !connection.isOpen()) {
+            return bufferUntilRecovery(action, errorMessage);
+        }
         try {
-            this.channel.basicPublish(
-                    "", SCAN_JOB_QUEUE, null, SerializationUtils.serialize(scanJob));
-        } catch (IOException e) {
-            LOGGER.error("Failed to submit ScanJob: ", e);
+            Channel channel = publishChannelPool.borrow();
+            try {
+                action.execute(channel);
+            } finally {
+                publishChannelPool.release(channel);
+            }
+            return true;
+        } catch (IOException | ShutdownSignalException e) {
+            if (automaticRecovery && !connection.isOpen()) {
+                return bufferUntilRecovery(action, errorMessage);
+            }
+            LOGGER.error(errorMessage, e);
+            return false;
         }
     }
 
-    public void registerScanJobConsumer(ScanJobConsumer scanJobConsumer, int prefetchCount) {
-        DeliverCallback deliverCallback =
-                (consumerTag, delivery) ->
-                        scanJobConsumer.consumeScanJob(
-                                SerializationUtils.deserialize(delivery.getBody()),
-                                delivery.getEnvelope().getDeliveryTag());
-        try {
-            channel.basicQos(prefetchCount);
-            channel.basicConsume(SCAN_JOB_QUEUE, false, deliverCallback, consumerTag -> {});
-        } catch (IOException e) {
-            LOGGER.error("Failed to register ScanJob consumer: ", e);
+    private boolean bufferUntilRecovery(ChannelAction action, String errorMessage) {
+        if (!recoveryBuffer.offer(action)) {
+            LOGGER.error(
+                    "{}RabbitMQ connection is down and the recovery buffer is full", errorMessage);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Called when the connection was lost. The broker requeues all unacknowledged scan jobs, so the
+     * delivery tags of all scan jobs received so far are stale.
+     */
+    private void handleConnectionLoss() {
+        for (int consumerId = 0; consumerId < lastDeliveryTags.size(); consumerId++) {
+            long lastDeliveryTag = lastDeliveryTags.get(consumerId).get();
+            staleDeliveryTags.get(consumerId).set(lastDeliveryTag);
+            if (ackCoalescer != null) {
+                ackCoalescer.discardUpTo(consumerId, lastDeliveryTag);
+            }
+        }
+    }
+
+    /**
+     * Called after the connection, its channels and consumers were recovered. Sends the publishes
+     * that were buffered while the connection was down.
+     */
+    private void handleConnectionRecovery() {
+        LOGGER.info("Recovered connection to RabbitMQ");
+        int buffered = recoveryBuffer.size();
+        if (buffered > 0) {
+            LOGGER.info("Publishing {} messages buffered during the connection loss", buffered);
+        }
+        ChannelAction action;
+        while ((action = recoveryBuffer.poll()) != null) {
+            publish(action, "Failed to publish buffered message: ");
+        }
+    }
+
+    /**
+     * @param channel to check
+     * @return true if the channel was closed by a connection loss and will be recovered
+     */
+    static boolean isRecovering(Channel channel) {
+        ShutdownSignalException closeReason = channel.getCloseReason();
+        return channel instanceof Recoverable
+                && !channel.isOpen()
+                && closeReason != null
+                && closeReason.isHardError()
+                && !closeReason.isInitiatedByApplication();
+    }
+
+    /**
+     * Runs the callback whenever the connection or channel was recovered automatically.
+     *
+     * @param connectionOrChannel to observe
+     * @param callback to run after the recovery
+     */
+    static void onRecovery(Object connectionOrChannel, Runnable callback) {
+        if (connectionOrChannel instanceof Recoverable) {
+            ((Recoverable) connectionOrChannel)
+                    .addRecoveryListener(
+                            new RecoveryListener() {
+                                @Override
+                                public void handleRecovery(Recoverable recoverable) {
+                                    callback.run();
+                                }
+
+                                @Override
+                                public void handleRecoveryStarted(Recoverable recoverable) {}
+                            });
+        }
+    }
+
+    /**
+     * Creates a publisher that publishes scan jobs in batches on its own channel and waits for
+     * publisher confirms.
+     *
+     * @param batchSize number of scan jobs that are published at once
+     * @param maxInFlight maximum number of published but not yet confirmed scan jobs
+     * @return the publisher
+     * @throws IOException if the channel for the publisher could not be created
+     */
+    @Override
+    public IScanJobPublisher createScanJobPublisher(int batchSize, int maxInFlight)
+            throws IOException {
+        return new RabbitMqScanJobPublisher(
+                this, connection.createChannel(), batchSize, maxInFlight);
+    }
+
+    void publishScanJob(Channel publishChannel, ScanJob scanJob) throws IOException {
+        publishScanJob(publishChannel, SCAN_JOB_QUEUE, scanJob);
+    }
+
+    private void publishScanJob(Channel publishChannel, String queue, ScanJob scanJob)
+            throws IOException {
+        int priority = getPriority(scanJob.getScanTarget(), priorityLevels);
+        if (legacyEncoding) {
+            publishChannel.basicPublish(
+                    "",
+                    queue,
+                    javaSerializedProperties[priority],
+                    SerializationUtils.serialize(scanJob));
+        } else {
+            publishChannel.basicPublish(
+                    "", queue, scanJobProperties[priority], MessageCodec.encodeScanJob(scanJob));
+        }
+    }
+
+    /**
+     * Publishes the next attempt of the scan job to the retry queue of its delay. The retry queue
+     * has no consumers, its messages expire after the delay and are then dead lettered back to the
+     * scan job queue. The failed scan job is acknowledged once the broker confirmed the next
+     * attempt.
+     *
+     * @param scanJob the failed scan job
+     * @param deliveryTag of the failed scan job
+     */
+    @Override
+    public void retryScanJob(ScanJob scanJob, DeliveryTag deliveryTag) {
+        ScanJob nextAttempt = scanJob.nextAttempt();
+        long delay = RetryBackoff.getRetryDelay(retryDelay, nextAttempt.getAttempt());
+        String retryQueue = RETRY_QUEUE_PREFIX + delay;
+        publishReplacement(
+                channel -> {
+                    if (!declaredRetryQueues.contains(retryQueue)) {
+                        channel.queueDeclare(
+                                retryQueue,
+                                durable,
+                                false,
+                                false,
+                                Map.<String, Object>of(
+                                        "x-message-ttl",
+                                        delay,
+                                        "x-dead-letter-exchange",
+                                        "",
+                                        "x-dead-letter-routing-key",
+                                        SCAN_JOB_QUEUE));
+                        declaredRetryQueues.add(retryQueue);
+                    }
+                    publishScanJob(channel, retryQueue, nextAttempt);
+                },
+                scanJob,
+                deliveryTag,
+                () -> {});
+    }
+
+    @Override
+    public void deadLetterScanJob(ScanJob scanJob, DeliveryTag deliveryTag) {
+        publishReplacement(
+                channel -> publishScanJob(channel, DEAD_LETTER_QUEUE, scanJob),
+                scanJob,
+                deliveryTag,
+                () -> {
+                    if (scanJob.isMonitored()) {
+                        recordProgress(scanJob, deliveryTag, true);
+                    }
+                });
+    }
+
+    /**
+     * Publishes a message that replaces a received scan job. The scan job is acknowledged once the
+     * broker confirmed the message, and requeued if the message could not be published.
+     *
+     * @param action that publishes the message
+     * @param scanJob the received scan job
+     * @param deliveryTag of the scan job
+     * @param onConfirmed run before the scan job is acknowledged
+     */
+    private void publishReplacement(
+            ChannelAction action, ScanJob scanJob, DeliveryTag deliveryTag, Runnable onConfirmed) {
+        Runnable requeue =
+                () -> {
+                    LOGGER.warn(
+                            "Could not publish the next step of the ScanJob for '{}', requeuing it",
+                            scanJob.getScanTarget());
+                    requeueScanJob(scanJob, deliveryTag);
+                };
+        if (replacementPublisher == null) {
+            requeue.run();
+            return;
+        }
+        replacementPublisher.publish(
+                action,
+                () -> {
+                    // the broker delivers a stale scan job again, its outcome must not be reported
+                    if (!isStale(deliveryTag)) {
+                        onConfirmed.run();
+                        sendAck(deliveryTag);
+                    }
+                },
+                requeue);
+    }
+
+    /**
+     * Maps the tranco rank of a target to a priority. Each order of magnitude of the rank is one
+     * priority level, i.e. ranks 1-9 get the highest priority, 10-99 the next lower one and so on.
+     * Targets without rank get the lowest priority 0.
+     *
+     * @param scanTarget the target
+     * @param priorityLevels maximum priority
+     * @return the priority between 0 and priorityLevels
+     */
+    static int getPriority(ScanTarget scanTarget, int priorityLevels) {
+        int rank = scanTarget.getTrancoRank();
+        if (priorityLevels == 0 || rank <= 0) {
+            return 0;
+        }
+        int magnitude = 0;
+        while (rank >= 10) {
+            rank /= 10;
+            magnitude++;
+        }
+        return Math.max(1, priorityLevels - magnitude);
+    }
+
+    private AMQP.BasicProperties persistent(AMQP.BasicProperties properties) {
+        return durable
+                ? properties.builder().deliveryMode(PERSISTENT_DELIVERY_MODE).build()
+                : properties;
+    }
+
+    private static AMQP.BasicProperties[] withPriorities(
+            AMQP.BasicProperties properties, int priorityLevels) {
+        AMQP.BasicProperties[] propertiesByPriority = new AMQP.BasicProperties[priorityLevels + 1];
+        propertiesByPriority[0] = properties;
+        for (int priority = 1; priority <= priorityLevels; priority++) {
+            propertiesByPriority[priority] = properties.builder().priority(priority).build();
+        }
+        return propertiesByPriority;
+    }
+
+    /**
+     * Registers consumers for the scan job queue. Each consumer uses its own channel and receives
+     * an equal share of the prefetch count. The prefetch count is set for the whole channel, so it
+     * can be changed later without registering the consumer again. Scan jobs in the compact binary
+     * format do not contain their scan config, the consumer has to resolve it using the bulk scan
+     * id.
+     *
+     * @param scanJobConsumer that is called for each received scan job
+     * @param consumerCount number of consumers and therefore channels
+     * @param prefetchCount maximum number of unacknowledged scan jobs over all consumers
+     */
+    @Override
+    public void registerScanJobConsumer(
+            ScanJobConsumer scanJobConsumer, int consumerCount, int prefetchCount) {
+        consumerCount = Math.max(1, consumerCount);
+        if (progressAggregator == null) {
+            progressAggregator = new ProgressAggregator();
+        }
+        if (ackCoalescer == null && ackFlushInterval > 0) {
+            ackCoalescer =
+                    new AckCoalescer(
+                            this::basicAck, this::flushProgress, ackFlushInterval, ackBatchSize);
+        }
+        if (replacementPublisher == null) {
+            try {
+                replacementPublisher = new ConfirmedPublisher(connection);
+            } catch (IOException e) {
+                LOGGER.error("Failed to create channel for retries: ", e);
+            }
+        }
+        int prefetchPerConsumer;
+        synchronized (consumerChannels) {
+            this.prefetchPerConsumer = prefetchShare(prefetchCount, consumerCount);
+            prefetchPerConsumer = this.prefetchPerConsumer;
+        }
+        if (ackCoalescer != null) {
+            ackCoalescer.setMaxTrackedTags(maxTrackedTags(prefetchPerConsumer));
+        }
+        for (int i = 0; i < consumerCount; i++) {
+            try {
+                Channel channel = connection.createChannel();
+                int consumerId = consumerChannels.size();
+                AtomicLong lastDeliveryTag = new AtomicLong();
+                lastDeliveryTags.add(lastDeliveryTag);
+                staleDeliveryTags.add(new AtomicLong());
+                consumerChannels.add(channel);
+                DeliverCallback deliverCallback =
+                        (consumerTag, delivery) -> {
+                            DeliveryTag deliveryTag =
+                                    new DeliveryTag(
+                                            consumerId, delivery.getEnvelope().getDeliveryTag());
+                            lastDeliveryTag.set(deliveryTag.getTag());
+                            ScanJob scanJob;
+                            try {
+                                scanJob = decodeScanJob(delivery);
+                            } catch (IOException | SerializationException e) {
+                                LOGGER.error("Could not decode ScanJob, rejecting message: ", e);
+                                channel.basicReject(deliveryTag.getTag(), false);
+                                if (ackCoalescer != null) {
+                                    ackCoalescer.settled(deliveryTag);
+                                }
+                                return;
+                            }
+                            scanJobConsumer.consumeScanJob(scanJob, deliveryTag);
+                        };
+                channel.basicQos(prefetchPerConsumer, true);
+                consumerTags.add(
+                        channel.basicConsume(
+                                SCAN_JOB_QUEUE, false, deliverCallback, consumerTag -> {}));
+            } catch (IOException e) {
+                LOGGER.error("Failed to register ScanJob consumer: ", e);
+            }
+        }
+    }
+
+    /**
+     * Cancels the consumers at the broker, the consumer channels stay open so that received scan
+     * jobs can still be acknowledged or requeued.
+     */
+    @Override
+    public void cancelScanJobConsumers() {
+        synchronized (consumerChannels) {
+            consumersCancelled = true;
+            for (int consumerId = 0; consumerId < consumerTags.size(); consumerId++) {
+                try {
+                    consumerChannels.get(consumerId).basicCancel(consumerTags.get(consumerId));
+                } catch (IOException | ShutdownSignalException e) {
+                    LOGGER.error("Failed to cancel ScanJob consumer: ", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Changes the prefetch count of the registered consumers. It is split equally among the
+     * consumer channels. The channel wide limit applies immediately and counts the scan jobs the
+     * consumer already received, so a lower limit stops new deliveries until enough of them are
+     * acknowledged.
+     *
+     * @param prefetchCount maximum number of unacknowledged scan jobs over all consumers
+     */
+    @Override
+    public void setPrefetchCount(int prefetchCount) {
+        synchronized (consumerChannels) {
+            int newPrefetchPerConsumer = prefetchShare(prefetchCount, consumerChannels.size());
+            if (consumersCancelled || newPrefetchPerConsumer == prefetchPerConsumer) {
+                return;
+            }
+            prefetchPerConsumer = newPrefetchPerConsumer;
+            if (ackCoalescer != null) {
+                ackCoalescer.setMaxTrackedTags(maxTrackedTags(prefetchPerConsumer));
+            }
+            for (Channel channel : consumerChannels) {
+                try {
+                    channel.basicQos(prefetchPerConsumer, true);
+                } catch (IOException | ShutdownSignalException e) {
+                    LOGGER.error("Failed to change prefetch count: ", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Completed scan jobs that wait for their acknowledgement occupy the prefetch window, at most
+     * half of it is used for them.
+     */
+    private static int maxTrackedTags(int prefetchPerConsumer) {
+        return Math.max(1, prefetchPerConsumer / 2);
+    }
+
+    private static int prefetchShare(int prefetchCount, int consumerCount) {
+        consumerCount = Math.max(1, consumerCount);
+        return Math.max(1, (prefetchCount + consumerCount - 1) / consumerCount);
+    }
+
+    private static ScanJob decodeScanJob(Delivery delivery) throws IOException {
+        if (MessageCodec.SCAN_JOB_CONTENT_TYPE.equals(delivery.getProperties().getContentType())) {
+            return MessageCodec.decodeScanJob(delivery.getBody());
         }
+        // legacy messages (with or without content type) are java serialized objects
+        return SerializationUtils.deserialize(delivery.getBody());
     }
 
-    public void sendAck(long deliveryTag) {
+    /**
+     * Acknowledges a scan job on the channel it was received on. Unless disabled, the
+     * acknowledgement is coalesced with those of other completed scan jobs and sent shortly after.
+     *
+     * @param deliveryTag of the scan job
+     */
+    @Override
+    public void sendAck(DeliveryTag deliveryTag) {
+        if (ackCoalescer != null) {
+            ackCoalescer.complete(deliveryTag);
+            return;
+        }
+        // the progress of the scan job is sent first, so it is not lost with the acknowledgement
+        flushProgress();
         try {
-            channel.basicAck(deliveryTag, false);
+            basicAck(deliveryTag.getConsumerId(), deliveryTag.getTag(), false);
         } catch (IOException e) {
             LOGGER.error("Failed to send message acknowledgment: ", e);
         }
     }
 
+    @Override
+    public void requeueScanJob(ScanJob scanJob, DeliveryTag deliveryTag) {
+        Channel channel = consumerChannels.get(deliveryTag.getConsumerId());
+        // the broker already requeued stale scan jobs and those of a closed channel
+        if (!isStale(deliveryTag) && channel.isOpen()) {
+            try {
+                channel.basicNack(deliveryTag.getTag(), false, true);
+            } catch (IOException | ShutdownSignalException e) {
+                LOGGER.error("Failed to requeue ScanJob: ", e);
+            }
+        }
+        if (ackCoalescer != null) {
+            ackCoalescer.settled(deliveryTag);
+        }
+    }
+
+    private void basicAck(int consumerId, long tag, boolean multiple) throws IOException {
+        Channel channel = consumerChannels.get(consumerId);
+        if (!channel.isOpen()) {
+            // the broker requeues all unacknowledged scan jobs of a closed channel
+            LOGGER.debug("Dropping acknowledgment of {}:{}, channel is closed", consumerId, tag);
+            return;
+        }
+        channel.basicAck(tag, multiple);
+    }
+
+    /**
+     * Scan jobs that were received before a connection recovery are requeued by the broker and
+     * delivered again.
+     *
+     * @param deliveryTag of the scan job
+     * @return true if the scan job was received before the last connection recovery
+     */
+    @Override
+    public boolean isStale(DeliveryTag deliveryTag) {
+        return deliveryTag.getTag() <= staleDeliveryTags.get(deliveryTag.getConsumerId()).get();
+    }
+
+    /**
+     * Registers a consumer for the progress notifications of the workers. Done notifications of
+     * workers that send one notification per scan job are converted to progress deltas.
+     *
+     * @param doneNotificationConsumer that is called for each received progress delta
+     */
+    @Override
     public void registerDoneNotificationConsumer(
             DoneNotificationConsumer doneNotificationConsumer) {
         DeliverCallback deliverCallback =
-                (consumerTag, delivery) ->
-                        doneNotificationConsumer.consumeDoneNotification(
-                                consumerTag, SerializationUtils.deserialize(delivery.getBody()));
+                (consumerTag, delivery) -> {
+                    ProgressDelta progressDelta;
+                    try {
+                        progressDelta = decodeProgressDelta(delivery);
+                    } catch (IOException | SerializationException e) {
+                        LOGGER.error("Could not decode done notification: ", e);
+                        return;
+                    }
+                    doneNotificationConsumer.consumeDoneNotification(consumerTag, progressDelta);
+                };
         try {
-            channel.basicQos(1);
-            channel.basicConsume(DONE_NOTIFY_QUEUE, true, deliverCallback, consumerTag -> {});
+            doneNotificationChannel = connection.createChannel();
+            doneNotificationChannel.basicQos(1);
+            doneNotificationChannel.basicConsume(
+                    DONE_NOTIFY_QUEUE, true, deliverCallback, consumerTag -> {});
         } catch (IOException e) {
             LOGGER.error("Failed to register DoneNotification consumer: ", e);
         }
     }
 
-    public void notifyOfDoneScanJob(ScanJob scanJob) {
-        try {
-            this.channel.basicPublish(
-                    "", DONE_NOTIFY_QUEUE, null, SerializationUtils.serialize(scanJob));
-        } catch (IOException e) {
-            LOGGER.error("Failed to send notification for done ScanJob: ", e);
+    private static ProgressDelta decodeProgressDelta(Delivery delivery) throws IOException {
+        if (MessageCodec.PROGRESS_DELTA_CONTENT_TYPE.equals(
+                delivery.getProperties().getContentType())) {
+            return MessageCodec.decodeProgressDelta(delivery.getBody());
         }
+        // legacy notifications contain the java serialized scan job
+        ScanJob scanJob = SerializationUtils.deserialize(delivery.getBody());
+        return ProgressDelta.of(scanJob);
     }
 
+    /**
+     * Notifies the controller that the scan job is done. Done scan jobs are counted per bulk scan
+     * and sent as one progress delta before the scan jobs are acknowledged, outside of the locks of
+     * the consumer channels. A scan job that is delivered again after its progress was sent is
+     * reported twice, the controller counts it once by its publish id.
+     *
+     * @param scanJob that is done
+     * @param deliveryTag of the scan job
+     */
+    @Override
+    public void notifyOfDoneScanJob(ScanJob scanJob, DeliveryTag deliveryTag) {
+        recordProgress(scanJob, deliveryTag, false);
+    }
+
+    private void recordProgress(ScanJob scanJob, DeliveryTag deliveryTag, boolean deadLettered) {
+        if (isStale(deliveryTag)) {
+            // the connection was lost in the meantime, the scan job is delivered again
+            return;
+        }
+        progressAggregator.record(scanJob, deadLettered);
+    }
+
+    /** Sends the counted done scan jobs, those that could not be sent are kept for later. */
+    private void flushProgress() {
+        for (ProgressDelta progressDelta : progressAggregator.drain()) {
+            if (!publishProgressDelta(progressDelta)) {
+                progressAggregator.restore(progressDelta);
+            }
+        }
+    }
+
+    private boolean publishProgressDelta(ProgressDelta progressDelta) {
+        byte[] body = MessageCodec.encodeProgressDelta(progressDelta);
+        return publish(
+                channel ->
+                        channel.basicPublish("", DONE_NOTIFY_QUEUE, progressDeltaProperties, body),
+                "Failed to send notification for done ScanJob: ");
+    }
+
+    @Override
     public void closeConnection() {
+        if (ackCoalescer != null) {
+            ackCoalescer.close();
+        }
+        if (replacementPublisher != null) {
+            replacementPublisher.close();
+        }
         try {
-            this.channel.close();
+            this.publishChannelPool.close();
+            // closing the connection also closes the consumer channels
             this.connection.close();
-        } catch (IOException | TimeoutException e) {
+        } catch (IOException e) {
             LOGGER.error("Failed to close RabbitMQ connection: ", e);
         }
     }
@@ -0,0 +1,297 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.orchestration;
+
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.Channel;
+import de.rub.nds.tlscrawler.data.ScanJob;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Publishes the scan jobs of a bulk scan on a dedicated channel with publisher confirms enabled.
+ * Scan jobs are collected in batches. A batch is not a combined message: it only reserves the
+ * permits of its scan jobs from the bounded number of unconfirmed scan jobs at once and publishes
+ * them one message each under a single channel lock, which saves the lock and permit handling per
+ * scan job. Scan jobs that could not be published or were nacked by the broker are reported by
+ * {@link #finish()}.
+ *
+ * <p>If the connection is lost, unconfirmed scan jobs and scan jobs published in the meantime are
+ * kept and published again once the channel was recovered. They still count as unconfirmed, so
+ * publishing blocks when the connection stays down. An unconfirmed scan job may have reached the
+ * broker before the connection was lost and is then delivered twice. Both copies have the same
+ * publish id, so the progress of the bulk scan counts the scan job only once. Scan jobs that were
+ * published but whose confirm was lost with a closed channel may have reached the broker, they are
+ * neither reported as failed nor as confirmed but counted by {@link #getUnconfirmedScanJobs()}.
+ *
+ * <p>The publisher can be used from multiple threads.
+ */
+public class RabbitMqScanJobPublisher implements IScanJobPublisher {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** Interval in which waiting for confirms is logged. */
+    private static final long CONFIRM_WAIT_LOG_INTERVAL_MS = 60000;
+
+    private final RabbitMqOrchestrationProvider orchestrationProvider;
+
+    private final Channel channel;
+
+    private final int batchSize;
+
+    private final int maxInFlight;
+
+    private final Semaphore inFlightPermits;
+
+    private final ConcurrentNavigableMap<Long, ScanJob> unconfirmedScanJobs =
+            new ConcurrentSkipListMap<>();
+
+    private final List<ScanJob> batch = new ArrayList<>();
+
+    private final List<ScanJob> failedScanJobs = Collections.synchronizedList(new ArrayList<>());
+
+    /** Scan jobs to publish again after the channel was recovered, guarded by the channel. */
+    private final List<ScanJob> awaitingRecovery = new ArrayList<>();
+
+    /** Published scan jobs whose confirm was lost, they may or may not have reached the broker. */
+    private final AtomicInteger unconfirmedScanJobCount = new AtomicInteger();
+
+    RabbitMqScanJobPublisher(
+            RabbitMqOrchestrationProvider orchestrationProvider,
+            Channel channel,
+            int batchSize,
+            int maxInFlight)
+            throws IOException {
+        this.orchestrationProvider = orchestrationProvider;
+        this.channel = channel;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.batchSize = Math.max(1, Math.min(batchSize, this.maxInFlight));
+        this.inFlightPermits = new Semaphore(this.maxInFlight);
+        channel.confirmSelect();
+        channel.addConfirmListener(
+                (seqNo, multiple) -> handleConfirm(seqNo, multiple, true),
+                (seqNo, multiple) -> handleConfirm(seqNo, multiple, false));
+        channel.addShutdownListener(
+                cause -> {
+                    if (!cause.isInitiatedByApplication()) {
+                        LOGGER.error("Publisher channel was closed unexpectedly: ", cause);
+                    }
+                    if (RabbitMqOrchestrationProvider.isRecovering(channel)) {
+                        keepUnconfirmedScanJobs();
+                    } else {
+                        abandonUnconfirmedScanJobs();
+                    }
+                });
+        RabbitMqOrchestrationProvider.onRecovery(channel, this::publishAwaitingRecovery);
+    }
+
+    /**
+     * Adds the scan job to the current batch and publishes the batch if it is full. Blocks if the
+     * maximum number of unconfirmed scan jobs is reached.
+     *
+     * @param scanJob to publish
+     */
+    @Override
+    public void publish(ScanJob scanJob) {
+        List<ScanJob> fullBatch = null;
+        synchronized (batch) {
+            batch.add(scanJob);
+            if (batch.size() >= batchSize) {
+                fullBatch = new ArrayList<>(batch);
+                batch.clear();
+            }
+        }
+        if (fullBatch != null) {
+            publishBatch(fullBatch);
+        }
+    }
+
+    /**
+     * Publishes the remaining scan jobs, waits until all scan jobs are confirmed and closes the
+     * channel. While the channel is recovering, waiting continues until it was recovered.
+     *
+     * @return the scan jobs that could not be published or were nacked
+     */
+    @Override
+    public List<ScanJob> finish() {
+        List<ScanJob> remaining;
+        synchronized (batch) {
+            remaining = new ArrayList<>(batch);
+            batch.clear();
+        }
+        if (!remaining.isEmpty()) {
+            publishBatch(remaining);
+        }
+        // all permits are available again once every scan job was confirmed
+        if (acquirePermits(maxInFlight)) {
+            inFlightPermits.release(maxInFlight);
+        } else {
+            // interrupted, the outcome of the remaining scan jobs is not known
+            abandonUnconfirmedScanJobs();
+            synchronized (channel) {
+                unconfirmedScanJobCount.addAndGet(awaitingRecovery.size());
+                inFlightPermits.release(awaitingRecovery.size());
+                awaitingRecovery.clear();
+            }
+        }
+        try {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+        } catch (IOException | TimeoutException e) {
+            LOGGER.error("Failed to close publisher channel: ", e);
+        }
+        synchronized (failedScanJobs) {
+            return new ArrayList<>(failedScanJobs);
+        }
+    }
+
+    /**
+     * @return number of published scan jobs for which no confirm was received because the channel
+     *     was closed, they may have reached the broker
+     */
+    @Override
+    public int getUnconfirmedScanJobs() {
+        return unconfirmedScanJobCount.get();
+    }
+
+    private void publishBatch(List<ScanJob> scanJobs) {
+        if (!acquirePermits(scanJobs.size())) {
+            // interrupted before anything was published
+            failedScanJobs.addAll(scanJobs);
+            return;
+        }
+        synchronized (channel) {
+            for (ScanJob scanJob : scanJobs) {
+                publishScanJob(scanJob);
+            }
+        }
+    }
+
+    /** Publishes a scan job, the caller has to hold the channel lock and a permit. */
+    private void publishScanJob(ScanJob scanJob) {
+        if (RabbitMqOrchestrationProvider.isRecovering(channel)) {
+            awaitingRecovery.add(scanJob);
+            return;
+        }
+        long seqNo = channel.getNextPublishSeqNo();
+        unconfirmedScanJobs.put(seqNo, scanJob);
+        try {
+            orchestrationProvider.publishScanJob(channel, scanJob);
+        } catch (IOException | AlreadyClosedException e) {
+            if (unconfirmedScanJobs.remove(seqNo) != null) {
+                if (RabbitMqOrchestrationProvider.isRecovering(channel)) {
+                    awaitingRecovery.add(scanJob);
+                } else {
+                    LOGGER.error("Failed to submit ScanJob: ", e);
+                    failedScanJobs.add(scanJob);
+                    inFlightPermits.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the permits are available. Permits are released by confirms and, if the channel
+     * is closed for good, by abandoning its unconfirmed scan jobs, so waiting ends in both cases.
+     *
+     * @return false if the thread was interrupted
+     */
+    private boolean acquirePermits(int permits) {
+        try {
+            while (!inFlightPermits.tryAcquire(
+                    permits, CONFIRM_WAIT_LOG_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn(
+                        "Still waiting for confirms of {} scan jobs{}",
+                        maxInFlight - inFlightPermits.availablePermits(),
+                        RabbitMqOrchestrationProvider.isRecovering(channel)
+                                ? ", channel is recovering"
+                                : "");
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Keeps the unconfirmed scan jobs for publishing them again after the recovery. Their sequence
+     * numbers are not valid on the recovered channel. They keep their publish id, so a scan job
+     * that reached the broker before is not counted twice.
+     */
+    private void keepUnconfirmedScanJobs() {
+        synchronized (channel) {
+            for (Long seqNo : new ArrayList<>(unconfirmedScanJobs.keySet())) {
+                ScanJob scanJob = unconfirmedScanJobs.remove(seqNo);
+                if (scanJob != null) {
+                    awaitingRecovery.add(scanJob);
+                }
+            }
+        }
+    }
+
+    private void publishAwaitingRecovery() {
+        synchronized (channel) {
+            List<ScanJob> scanJobs = new ArrayList<>(awaitingRecovery);
+            awaitingRecovery.clear();
+            if (!scanJobs.isEmpty()) {
+                LOGGER.info("Publishing {} scan jobs again after recovery", scanJobs.size());
+            }
+            for (ScanJob scanJob : scanJobs) {
+                publishScanJob(scanJob);
+            }
+        }
+    }
+
+    private void handleConfirm(long seqNo, boolean multiple, boolean ack) {
+        if (multiple) {
+            Map<Long, ScanJob> confirmed = unconfirmedScanJobs.headMap(seqNo, true);
+            for (Long confirmedSeqNo : new ArrayList<>(confirmed.keySet())) {
+                confirmScanJob(confirmedSeqNo, ack);
+            }
+        } else {
+            confirmScanJob(seqNo, ack);
+        }
+    }
+
+    private void confirmScanJob(long seqNo, boolean ack) {
+        ScanJob scanJob = unconfirmedScanJobs.remove(seqNo);
+        if (scanJob != null) {
+            if (!ack) {
+                failedScanJobs.add(scanJob);
+            }
+            inFlightPermits.release();
+        }
+    }
+
+    /**
+     * Gives up on the confirms of the unconfirmed scan jobs, e.g. because the channel was closed
+     * for good. They may have reached the broker, so they are not reported as failed.
+     */
+    private void abandonUnconfirmedScanJobs() {
+        for (Long seqNo : new ArrayList<>(unconfirmedScanJobs.keySet())) {
+            if (unconfirmedScanJobs.remove(seqNo) != null) {
+                unconfirmedScanJobCount.incrementAndGet();
+                inFlightPermits.release();
+            }
+        }
+    }
+}
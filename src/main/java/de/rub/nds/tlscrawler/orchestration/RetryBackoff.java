@@ -0,0 +1,33 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.orchestration;
+
+import java.util.concurrent.TimeUnit;
+
+/** Exponential backoff between the attempts of a scan job. */
+final class RetryBackoff {
+
+    static final long MAX_RETRY_DELAY_MS = TimeUnit.HOURS.toMillis(6);
+
+    private RetryBackoff() {}
+
+    /**
+     * @param baseDelayMs delay before the second attempt
+     * @param attempt number of the upcoming attempt, starting at 2 for the first retry
+     * @return the delay before the attempt, doubled for each retry and capped at {@link
+     *     #MAX_RETRY_DELAY_MS}
+     */
+    static long getRetryDelay(long baseDelayMs, int attempt) {
+        long delay = Math.max(1, baseDelayMs);
+        for (int i = 2; i < attempt && delay < MAX_RETRY_DELAY_MS; i++) {
+            delay <<= 1;
+        }
+        return Math.min(delay, MAX_RETRY_DELAY_MS);
+    }
+}
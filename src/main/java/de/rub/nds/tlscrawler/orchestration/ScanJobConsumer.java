@@ -13,5 +13,5 @@ import de.rub.nds.tlscrawler.data.ScanJob;
 @FunctionalInterface
 public interface ScanJobConsumer {
 
-    void consumeScanJob(ScanJob scanJob, long deliveryTag);
+    void consumeScanJob(ScanJob scanJob, DeliveryTag deliveryTag);
 }
@@ -10,6 +10,7 @@ package de.rub.nds.tlscrawler.persistence;
 
 import de.rub.nds.tlscrawler.data.BulkScan;
 import de.rub.nds.tlscrawler.data.ScanResult;
+import java.util.List;
 
 /**
  * Persistence provider interface. Exposes methods to write out the different stages of a task to a
@@ -17,9 +18,41 @@ import de.rub.nds.tlscrawler.data.ScanResult;
  */
 public interface IPersistenceProvider {
 
-    void insertScanResult(ScanResult scanResult, String dbName, String collectionName);
+    /**
+     * Writes a scan result. A result that can never be written, e.g. because it cannot be
+     * serialized, is logged and skipped.
+     *
+     * @param scanResult the scan result to write
+     * @param dbName Name of the database to write to.
+     * @param collectionName Name of the collection to write to.
+     * @return false if the result was not written because of a temporary failure, e.g. because the
+     *     database is not reachable
+     */
+    boolean insertScanResult(ScanResult scanResult, String dbName, String collectionName);
+
+    /**
+     * Writes several scan results into the same collection at once. Like with {@link
+     * #insertScanResult(ScanResult, String, String)}, results that can never be written are logged
+     * and skipped.
+     *
+     * @param scanResults the scan results to write
+     * @param dbName Name of the database to write to.
+     * @param collectionName Name of the collection to write to.
+     * @return the scan results that were not written because of a temporary failure
+     */
+    List<ScanResult> insertScanResults(
+            List<ScanResult> scanResults, String dbName, String collectionName);
 
     void insertBulkScan(BulkScan bulkScan);
 
     void updateBulkScan(BulkScan bulkScan);
+
+    /**
+     * Reads the bulk scan with the given id.
+     *
+     * @param dbName Name of the database the bulk scan was written to.
+     * @param bulkScanId Id of the bulk scan.
+     * @return the bulk scan or null if there is no bulk scan with that id.
+     */
+    BulkScan getBulkScan(String dbName, String bulkScanId);
 }
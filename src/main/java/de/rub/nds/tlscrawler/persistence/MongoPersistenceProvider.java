@@ -14,11 +14,16 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.mongodb.ConnectionString;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.MongoCredential;
+import com.mongodb.MongoWriteException;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.InsertManyOptions;
 import com.mongodb.lang.NonNull;
 import de.rub.nds.tlscrawler.config.delegate.MongoDbDelegate;
 import de.rub.nds.tlscrawler.data.BulkScan;
@@ -28,12 +33,20 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.bson.BSONException;
 import org.bson.UuidRepresentation;
+import org.bson.codecs.configuration.CodecConfigurationException;
 import org.mongojack.JacksonMongoCollection;
+import org.mongojack.MongoJsonMappingException;
 
 /** A persistence provider implementation using MongoDB as the persistence layer. */
 public class MongoPersistenceProvider implements IPersistenceProvider {
@@ -42,7 +55,7 @@ public class MongoPersistenceProvider implements IPersistenceProvider {
     private final MongoClient mongoClient;
     private final ObjectMapper mapper;
     private final Map<String, JacksonMongoCollection<ScanResult>> collectionByDbAndCollectionName;
-    private JacksonMongoCollection<BulkScan> bulkScanCollection;
+    private final Map<String, JacksonMongoCollection<BulkScan>> bulkScanCollectionByDbName;
 
     /**
      * Initialize connection to mongodb and setup MongoJack PojoToBson mapper.
@@ -75,7 +88,8 @@ public class MongoPersistenceProvider implements IPersistenceProvider {
 
         this.mapper = new ObjectMapper();
         LOGGER.trace("Constructor()");
-        this.collectionByDbAndCollectionName = new HashMap<>();
+        this.collectionByDbAndCollectionName = new ConcurrentHashMap<>();
+        this.bulkScanCollectionByDbName = new ConcurrentHashMap<>();
 
         SimpleModule module = new SimpleModule();
         module.addSerializer(new ByteArraySerializer());
@@ -144,18 +158,16 @@ public class MongoPersistenceProvider implements IPersistenceProvider {
     }
 
     private JacksonMongoCollection<BulkScan> getBulkScanCollection(String dbName) {
-        if (this.bulkScanCollection == null) {
-            MongoDatabase database = this.mongoClient.getDatabase(dbName);
-            this.bulkScanCollection =
-                    JacksonMongoCollection.builder()
-                            .withObjectMapper(mapper)
-                            .build(
-                                    database,
-                                    "bulkScans",
-                                    BulkScan.class,
-                                    UuidRepresentation.STANDARD);
-        }
-        return this.bulkScanCollection;
+        return this.bulkScanCollectionByDbName.computeIfAbsent(
+                dbName,
+                name ->
+                        JacksonMongoCollection.builder()
+                                .withObjectMapper(mapper)
+                                .build(
+                                        this.mongoClient.getDatabase(name),
+                                        "bulkScans",
+                                        BulkScan.class,
+                                        UuidRepresentation.STANDARD));
     }
 
     @Override
@@ -169,25 +181,106 @@ public class MongoPersistenceProvider implements IPersistenceProvider {
         this.insertBulkScan(bulkScan);
     }
 
+    @Override
+    public BulkScan getBulkScan(String dbName, String bulkScanId) {
+        return this.getBulkScanCollection(dbName).findOneById(bulkScanId);
+    }
+
     /**
      * Inserts the task into a collection named after the scan and a database named after the
      * workspace of the scan.
      *
      * @param scanResult The new scan task.
+     * @return false if the result was not written because of a temporary failure
      */
     @Override
-    public void insertScanResult(ScanResult scanResult, String dbName, String collectionName) {
+    public boolean insertScanResult(ScanResult scanResult, String dbName, String collectionName) {
+        if (scanResult == null || scanResult.getResult() == null) {
+            return true;
+        }
+        LOGGER.info(
+                "Writing result for {} into collection: {}",
+                scanResult.getScanTarget().getHostname(),
+                collectionName);
         try {
-            if (scanResult != null && scanResult.getResult() != null) {
-                LOGGER.info(
-                        "Writing result for {} into collection: {}",
-                        scanResult.getScanTarget().getHostname(),
-                        collectionName);
-                this.getCollection(dbName, collectionName).insertOne(scanResult);
+            this.getCollection(dbName, collectionName).insertOne(scanResult);
+            return true;
+        } catch (RuntimeException e) {
+            if (isPermanentFailure(e)) {
+                LOGGER.error("Exception while writing Result to MongoDB, skipping it: ", e);
+                return true;
             }
-        } catch (Exception e) {
-            // catch JsonMappingException etc.
-            LOGGER.error("Exception while writing Result to MongoDB: ", e);
+            LOGGER.warn("Could not write Result to MongoDB: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public List<ScanResult> insertScanResults(
+            List<ScanResult> scanResults, String dbName, String collectionName) {
+        List<ScanResult> writableResults =
+                scanResults.stream()
+                        .filter(scanResult -> scanResult != null && scanResult.getResult() != null)
+                        .collect(Collectors.toList());
+        if (writableResults.isEmpty()) {
+            return List.of();
         }
+        LOGGER.info(
+                "Writing {} results into collection: {}", writableResults.size(), collectionName);
+        try {
+            // unordered, so one failing result does not prevent writing the others
+            this.getCollection(dbName, collectionName)
+                    .insertMany(writableResults, new InsertManyOptions().ordered(false));
+            return List.of();
+        } catch (MongoBulkWriteException e) {
+            // documents rejected by the server are rejected again when retried
+            Set<Integer> rejected = new HashSet<>();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                rejected.add(error.getIndex());
+                if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    LOGGER.error(
+                            "Exception while writing Result for {} to MongoDB: {}",
+                            writableResults.get(error.getIndex()).getScanTarget().getHostname(),
+                            error.getMessage());
+                }
+            }
+            if (e.getWriteConcernError() == null) {
+                return List.of();
+            }
+            // the other results may not have been written durably
+            LOGGER.warn(
+                    "Write concern error while writing Results to MongoDB: {}",
+                    e.getWriteConcernError().getMessage());
+            List<ScanResult> failedResults = new ArrayList<>();
+            for (int i = 0; i < writableResults.size(); i++) {
+                if (!rejected.contains(i)) {
+                    failedResults.add(writableResults.get(i));
+                }
+            }
+            return failedResults;
+        } catch (RuntimeException e) {
+            if (!isPermanentFailure(e)) {
+                LOGGER.warn("Could not write Results to MongoDB: {}", e.getMessage());
+                return writableResults;
+            }
+            // e.g. a JsonMappingException fails the whole batch, write the results one by one
+            LOGGER.warn("Exception while writing Results to MongoDB, writing them one by one: ", e);
+            return writableResults.stream()
+                    .filter(scanResult -> !insertScanResult(scanResult, dbName, collectionName))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @param e exception thrown while writing
+     * @return true if writing the same result again fails as well, e.g. because it cannot be
+     *     serialized or the server rejects it
+     */
+    private static boolean isPermanentFailure(RuntimeException e) {
+        return e instanceof MongoJsonMappingException
+                || e instanceof BSONException
+                || e instanceof CodecConfigurationException
+                || e instanceof MongoWriteException
+                || e instanceof IllegalArgumentException;
     }
 }
@@ -0,0 +1,285 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.persistence;
+
+import de.rub.nds.tlscrawler.data.ScanResult;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes scan results asynchronously, so a slow database does not stall the scan threads. Results
+ * are put into a bounded queue that is drained by dedicated writer threads. A writer thread inserts
+ * the results of the same collection together once it collected a full batch or the flush interval
+ * elapsed. Scans only block while the queue is full.
+ *
+ * <p>The callback of a result runs after it was written, so the scan job is acknowledged only
+ * afterwards. A batch that failed temporarily, e.g. because the database is not reachable, is
+ * retried a few times. Results that still could not be written are reported as failed, so their
+ * scan jobs can be requeued instead of being acknowledged without a result.
+ */
+public class ScanResultWriter {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /** Interval in which idle writer threads check whether the writer was closed. */
+    private static final long POLL_INTERVAL_MS = 100;
+
+    /** Number of attempts to write a batch that failed temporarily. */
+    private static final int WRITE_ATTEMPTS = 3;
+
+    /** Delay before the first retry of a batch, doubled with each retry. */
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private final IPersistenceProvider persistenceProvider;
+
+    private final int batchSize;
+
+    private final long flushInterval;
+
+    private final BlockingQueue<PendingResult> queue;
+
+    private final List<Thread> writerThreads = new ArrayList<>();
+
+    /** Results that were handed to the writer and whose callback did not run yet. */
+    private final AtomicInteger pendingResults = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /**
+     * @param persistenceProvider writes the batches
+     * @param queueSize maximum number of results waiting to be written
+     * @param batchSize maximum number of results written at once
+     * @param flushInterval maximum time in ms a result waits for further results of its batch
+     * @param writerThreadCount number of writer threads
+     */
+    public ScanResultWriter(
+            IPersistenceProvider persistenceProvider,
+            int queueSize,
+            int batchSize,
+            long flushInterval,
+            int writerThreadCount) {
+        this.persistenceProvider = persistenceProvider;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = flushInterval;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        for (int i = 0; i < Math.max(1, writerThreadCount); i++) {
+            Thread thread = new Thread(this::writeBatches, "result-writer-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            writerThreads.add(thread);
+        }
+    }
+
+    /**
+     * Queues a scan result for writing, waiting while the queue is full.
+     *
+     * @param scanResult the scan result to write
+     * @param dbName Name of the database to write to.
+     * @param collectionName Name of the collection to write to.
+     * @param onWritten is called once the result was written
+     * @param onFailed is called if the result could not be written because of a temporary failure
+     * @return false if the thread was interrupted before the result could be queued
+     */
+    public boolean write(
+            ScanResult scanResult,
+            String dbName,
+            String collectionName,
+            Runnable onWritten,
+            Runnable onFailed) {
+        PendingResult pendingResult =
+                new PendingResult(scanResult, dbName, collectionName, onWritten, onFailed);
+        pendingResults.incrementAndGet();
+        if (closed) {
+            // the writer threads may already have terminated
+            flush(List.of(pendingResult));
+            return true;
+        }
+        try {
+            queue.put(pendingResult);
+            if (closed && queue.remove(pendingResult)) {
+                // closed meanwhile, no writer thread may take the result anymore
+                flush(List.of(pendingResult));
+            }
+            return true;
+        } catch (InterruptedException e) {
+            pendingResults.decrementAndGet();
+            Thread.currentThread().interrupt();
+            LOGGER.warn(
+                    "Interrupted while waiting to write the result for {}",
+                    scanResult.getScanTarget());
+            return false;
+        }
+    }
+
+    /**
+     * @return number of results that are not written yet
+     */
+    public int getPendingResults() {
+        return pendingResults.get();
+    }
+
+    /**
+     * Writes the remaining results and stops the writer threads.
+     *
+     * @param timeoutMs maximum time to wait for the remaining results
+     */
+    public void close(long timeoutMs) {
+        closed = true;
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            for (Thread thread : writerThreads) {
+                thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (pendingResults.get() > 0) {
+            LOGGER.warn("Closed result writer with {} results not written", pendingResults.get());
+        }
+    }
+
+    private void writeBatches() {
+        List<PendingResult> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                PendingResult first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                long flushDeadline = System.currentTimeMillis() + flushInterval;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = flushDeadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || remaining <= 0 || closed) {
+                        break;
+                    }
+                    PendingResult next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                LOGGER.warn("Result writer was interrupted");
+                Thread.currentThread().interrupt();
+                flush(batch);
+                return;
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<PendingResult> batch) {
+        Map<String, List<PendingResult>> batchByCollection = new LinkedHashMap<>();
+        for (PendingResult pendingResult : batch) {
+            batchByCollection
+                    .computeIfAbsent(
+                            pendingResult.dbName + "/" + pendingResult.collectionName,
+                            key -> new ArrayList<>())
+                    .add(pendingResult);
+        }
+        for (List<PendingResult> collectionBatch : batchByCollection.values()) {
+            List<ScanResult> scanResults = new ArrayList<>(collectionBatch.size());
+            collectionBatch.forEach(pendingResult -> scanResults.add(pendingResult.scanResult));
+            PendingResult first = collectionBatch.get(0);
+            Set<ScanResult> failedResults = Collections.newSetFromMap(new IdentityHashMap<>());
+            failedResults.addAll(insert(scanResults, first.dbName, first.collectionName));
+            if (!failedResults.isEmpty()) {
+                LOGGER.error(
+                        "Could not write {} results into collection {}, requeueing their scan jobs",
+                        failedResults.size(),
+                        first.collectionName);
+            }
+            for (PendingResult pendingResult : collectionBatch) {
+                try {
+                    if (failedResults.contains(pendingResult.scanResult)) {
+                        pendingResult.onFailed.run();
+                    } else {
+                        pendingResult.onWritten.run();
+                    }
+                } catch (Exception e) {
+                    LOGGER.error("Exception after writing result: ", e);
+                } finally {
+                    pendingResults.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the results, retrying those that failed temporarily unless the writer is closed.
+     *
+     * @return the results that could not be written
+     */
+    private List<ScanResult> insert(
+            List<ScanResult> scanResults, String dbName, String collectionName) {
+        List<ScanResult> remaining = scanResults;
+        long retryDelay = RETRY_DELAY_MS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                remaining =
+                        persistenceProvider.insertScanResults(remaining, dbName, collectionName);
+            } catch (Exception e) {
+                LOGGER.error("Exception while writing results: ", e);
+            }
+            if (remaining.isEmpty() || attempt >= WRITE_ATTEMPTS || closed) {
+                return remaining;
+            }
+            try {
+                Thread.sleep(retryDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return remaining;
+            }
+            retryDelay *= 2;
+        }
+    }
+
+    private static class PendingResult {
+
+        private final ScanResult scanResult;
+
+        private final String dbName;
+
+        private final String collectionName;
+
+        private final Runnable onWritten;
+
+        private final Runnable onFailed;
+
+        private PendingResult(
+                ScanResult scanResult,
+                String dbName,
+                String collectionName,
+                Runnable onWritten,
+                Runnable onFailed) {
+            this.scanResult = scanResult;
+            this.dbName = dbName;
+            this.collectionName = collectionName;
+            this.onWritten = onWritten;
+            this.onFailed = onFailed;
+        }
+    }
+}
@@ -8,10 +8,11 @@
  */
 package de.rub.nds.tlscrawler.scans;
 
+import de.rub.nds.tlscrawler.constant.Status;
 import de.rub.nds.tlscrawler.data.ScanJob;
-import de.rub.nds.tlscrawler.data.ScanResult;
-import de.rub.nds.tlscrawler.orchestration.RabbitMqOrchestrationProvider;
-import de.rub.nds.tlscrawler.persistence.IPersistenceProvider;
+import de.rub.nds.tlscrawler.orchestration.DeliveryTag;
+import de.rub.nds.tlscrawler.orchestration.IOrchestrationProvider;
+import de.rub.nds.tlscrawler.persistence.ScanResultWriter;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
@@ -29,10 +30,10 @@ public class PingScan extends Scan {
 
     public PingScan(
             ScanJob scanJob,
-            long rabbitMqAckTag,
-            RabbitMqOrchestrationProvider orchestrationProvider,
-            IPersistenceProvider persistenceProvider) {
-        super(scanJob, rabbitMqAckTag, orchestrationProvider, persistenceProvider);
+            DeliveryTag deliveryTag,
+            IOrchestrationProvider orchestrationProvider,
+            ScanResultWriter resultWriter) {
+        super(scanJob, deliveryTag, orchestrationProvider, resultWriter);
     }
 
     // Ping, Java style. I. e., 1 of approx. 10^10 possible implementations with
@@ -70,13 +71,8 @@ public class PingScan extends Scan {
             result.put("unreachablePorts", new ArrayList<>(scanJob.getScanTarget().getPort()));
         }
 
-        persistenceProvider.insertScanResult(
-                new ScanResult(scanJob.getBulkScanId(), scanJob.getScanTarget(), result),
-                scanJob.getDbName(),
-                scanJob.getCollectionName());
-
-        if (scanJob.isMonitored()) {
-            orchestrationProvider.notifyOfDoneScanJob(scanJob);
+        if (!writeResult(result, Status.DoneResultWritten)) {
+            complete();
         }
     }
 }
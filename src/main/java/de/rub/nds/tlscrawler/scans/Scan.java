@@ -8,34 +8,119 @@
  */
 package de.rub.nds.tlscrawler.scans;
 
+import de.rub.nds.tlscrawler.constant.Status;
 import de.rub.nds.tlscrawler.data.ScanJob;
-import de.rub.nds.tlscrawler.orchestration.RabbitMqOrchestrationProvider;
-import de.rub.nds.tlscrawler.persistence.IPersistenceProvider;
+import de.rub.nds.tlscrawler.data.ScanResult;
+import de.rub.nds.tlscrawler.orchestration.DeliveryTag;
+import de.rub.nds.tlscrawler.orchestration.IOrchestrationProvider;
+import de.rub.nds.tlscrawler.persistence.ScanResultWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
 
 /** Interface to be implemented by scans. */
 public abstract class Scan implements Runnable {
 
+    private static final Logger LOGGER = LogManager.getLogger();
+
     protected ScanJob scanJob;
 
-    protected RabbitMqOrchestrationProvider orchestrationProvider;
+    protected IOrchestrationProvider orchestrationProvider;
+
+    protected ScanResultWriter resultWriter;
 
-    protected IPersistenceProvider persistenceProvider;
+    protected DeliveryTag deliveryTag;
 
-    protected long rabbitMqAckTag;
+    /** Set once the scan job was acknowledged or requeued. */
+    private final AtomicBoolean settled = new AtomicBoolean();
 
     public Scan(
             ScanJob scanJob,
-            long rabbitMqAckTag,
-            RabbitMqOrchestrationProvider orchestrationProvider,
-            IPersistenceProvider persistenceProvider) {
+            DeliveryTag deliveryTag,
+            IOrchestrationProvider orchestrationProvider,
+            ScanResultWriter resultWriter) {
         this.scanJob = scanJob;
-        this.rabbitMqAckTag = rabbitMqAckTag;
+        this.deliveryTag = deliveryTag;
         this.orchestrationProvider = orchestrationProvider;
-        this.persistenceProvider = persistenceProvider;
+        this.resultWriter = resultWriter;
     }
 
     public void cancel(boolean timeout) {}
 
+    /**
+     * Returns the scan job to the queue unless the scan already completed. The outcome of the scan
+     * is not reported anymore afterwards.
+     *
+     * @return true if the scan job was requeued
+     */
+    public boolean requeue() {
+        if (!settled.compareAndSet(false, true)) {
+            return false;
+        }
+        orchestrationProvider.requeueScanJob(scanJob, deliveryTag);
+        return true;
+    }
+
+    /**
+     * Hands the result of the scan to the result writer. The scan job is completed with the given
+     * status once the result was written. If it could not be written, the scan job is requeued.
+     *
+     * @param result the result of the scan
+     * @param status of the scan job after the result was written
+     * @return false if the result could not be queued, the scan job is not completed then
+     */
+    protected boolean writeResult(Document result, Status status) {
+        return resultWriter.write(
+                new ScanResult(scanJob.getBulkScanId(), scanJob.getScanTarget(), result),
+                scanJob.getDbName(),
+                scanJob.getCollectionName(),
+                () -> {
+                    scanJob.setStatus(status);
+                    complete();
+                },
+                this::requeue);
+    }
+
+    /**
+     * Reports the outcome of the scan job and acknowledges it. If the scan timed out or failed and
+     * the scan job has attempts left, its next attempt is submitted with a delay instead. A failed
+     * scan job that was retried and has no attempts left is moved to the dead letter queue. In both
+     * cases the scan job is only acknowledged once its next attempt or dead letter was published. A
+     * scan job with a single attempt is reported as done when it fails. Stale scan jobs, which are
+     * delivered again, are not reported. Completing a requeued scan has no effect.
+     */
+    protected void complete() {
+        if (!settled.compareAndSet(false, true)) {
+            return;
+        }
+        if (orchestrationProvider.isStale(deliveryTag)) {
+            LOGGER.info(
+                    "Scan job for '{}' will be delivered again, not reporting its outcome",
+                    scanJob.getScanTarget());
+            return;
+        }
+        Status status = scanJob.getStatus();
+        if ((status == Status.Timeout || status == Status.Error) && scanJob.getMaxAttempts() > 1) {
+            if (scanJob.getAttempt() < scanJob.getMaxAttempts()) {
+                LOGGER.info(
+                        "Attempt {} of {} for '{}' failed ({}), retrying later",
+                        scanJob.getAttempt(),
+                        scanJob.getMaxAttempts(),
+                        scanJob.getScanTarget(),
+                        status);
+                orchestrationProvider.retryScanJob(scanJob, deliveryTag);
+            } else {
+                orchestrationProvider.deadLetterScanJob(scanJob, deliveryTag);
+            }
+            return;
+        }
+        if (scanJob.isMonitored()) {
+            orchestrationProvider.notifyOfDoneScanJob(scanJob, deliveryTag);
+        }
+        orchestrationProvider.sendAck(deliveryTag);
+    }
+
     public ScanJob getScanJob() {
         return this.scanJob;
     }
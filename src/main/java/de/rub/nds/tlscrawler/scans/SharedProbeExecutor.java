@@ -0,0 +1,180 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.scans;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Worker-wide pool for the probe tasks of all TLS scans. Each scan borrows a lease, which the
+ * TLS-Scanner uses like its own thread pool. A lease does not own any threads, it forwards its
+ * tasks to the shared pool but never has more than its share of tasks running or waiting there.
+ * Further tasks of the scan wait in the lease, so a single scan can not crowd out the others.
+ *
+ * <p>The shared pool has a fixed maximum number of threads, which are reused across scans.
+ */
+public class SharedProbeExecutor {
+
+    private final ThreadPoolExecutor sharedPool;
+
+    private final int sharePerScan;
+
+    /**
+     * @param maxThreads maximum number of probe threads of the worker
+     * @param sharePerScan maximum number of concurrently running probe tasks of a single scan
+     */
+    public SharedProbeExecutor(int maxThreads, int sharePerScan) {
+        this.sharePerScan = Math.max(1, sharePerScan);
+        AtomicInteger threadNumber = new AtomicInteger();
+        sharedPool =
+                new ThreadPoolExecutor(
+                        maxThreads,
+                        maxThreads,
+                        1,
+                        TimeUnit.MINUTES,
+                        new LinkedBlockingQueue<>(),
+                        runnable -> {
+                            Thread thread =
+                                    new Thread(runnable, "probe-" + threadNumber.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        sharedPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return a new lease for a single scan, shutting it down does not affect the shared pool
+     */
+    public ThreadPoolExecutor lease() {
+        return new Lease(sharePerScan);
+    }
+
+    public int getSharePerScan() {
+        return sharePerScan;
+    }
+
+    /**
+     * @return number of probe tasks that are currently running
+     */
+    public int getActiveProbes() {
+        return sharedPool.getActiveCount();
+    }
+
+    /**
+     * Per-scan view of the shared pool. It extends {@link ThreadPoolExecutor} because the
+     * TLS-Scanner requires one; the inherited pool is never started.
+     */
+    private class Lease extends ThreadPoolExecutor {
+
+        private final int share;
+
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger dispatched = new AtomicInteger();
+
+        private final AtomicLong completed = new AtomicLong();
+
+        private Lease(int share) {
+            super(0, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+            this.share = share;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (isShutdown()) {
+                throw new RejectedExecutionException("Probe lease is already shut down");
+            }
+            pending.add(command);
+            dispatch();
+        }
+
+        /** Forwards pending tasks to the shared pool until the share of the scan is used. */
+        private void dispatch() {
+            while (!pending.isEmpty()) {
+                int current = dispatched.get();
+                if (current >= share) {
+                    return;
+                }
+                if (!dispatched.compareAndSet(current, current + 1)) {
+                    continue;
+                }
+                Runnable task = pending.poll();
+                if (task == null) {
+                    dispatched.decrementAndGet();
+                    continue;
+                }
+                try {
+                    sharedPool.execute(() -> runDispatched(task));
+                } catch (RejectedExecutionException e) {
+                    dispatched.decrementAndGet();
+                    cancel(task);
+                }
+            }
+        }
+
+        private void runDispatched(Runnable task) {
+            try {
+                task.run();
+            } finally {
+                completed.incrementAndGet();
+                dispatched.decrementAndGet();
+                dispatch();
+            }
+        }
+
+        /** Does not wait for running tasks, tasks that were not dispatched yet are cancelled. */
+        @Override
+        public void shutdown() {
+            super.shutdown();
+            cancelPending();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            super.shutdownNow();
+            return cancelPending();
+        }
+
+        private List<Runnable> cancelPending() {
+            List<Runnable> cancelled = new ArrayList<>();
+            Runnable task;
+            while ((task = pending.poll()) != null) {
+                cancel(task);
+                cancelled.add(task);
+            }
+            return cancelled;
+        }
+
+        private void cancel(Runnable task) {
+            if (task instanceof Future) {
+                ((Future<?>) task).cancel(false);
+            }
+        }
+
+        @Override
+        public int getActiveCount() {
+            return dispatched.get();
+        }
+
+        @Override
+        public long getCompletedTaskCount() {
+            return completed.get();
+        }
+    }
+}
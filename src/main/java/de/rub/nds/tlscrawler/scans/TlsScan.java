@@ -12,9 +12,9 @@ import de.rub.nds.tlsattacker.core.config.delegate.GeneralDelegate;
 import de.rub.nds.tlsattacker.core.workflow.ParallelExecutor;
 import de.rub.nds.tlscrawler.constant.Status;
 import de.rub.nds.tlscrawler.data.ScanJob;
-import de.rub.nds.tlscrawler.data.ScanResult;
-import de.rub.nds.tlscrawler.orchestration.RabbitMqOrchestrationProvider;
-import de.rub.nds.tlscrawler.persistence.IPersistenceProvider;
+import de.rub.nds.tlscrawler.orchestration.DeliveryTag;
+import de.rub.nds.tlscrawler.orchestration.IOrchestrationProvider;
+import de.rub.nds.tlscrawler.persistence.ScanResultWriter;
 import de.rub.nds.tlsscanner.serverscanner.config.ServerScannerConfig;
 import de.rub.nds.tlsscanner.serverscanner.execution.TlsServerScanner;
 import de.rub.nds.tlsscanner.serverscanner.report.ServerReport;
@@ -27,23 +27,40 @@ import org.bson.Document;
 public class TlsScan extends Scan {
 
     private static final Logger LOGGER = LogManager.getLogger();
-    private final ParallelExecutor parallelExecutor;
+    private final SharedProbeExecutor probeExecutor;
+
+    /** Created when the scan starts, so waiting scans do not hold an executor. */
+    private volatile ParallelExecutor parallelExecutor;
+
     private final AtomicBoolean cancelled = new AtomicBoolean(false);
 
+    /** Round trip time measured by the reachability check, -1 if the target was not checked. */
+    private volatile long connectRtt = -1;
+
     public TlsScan(
             ScanJob scanJob,
-            long rabbitMqAckTag,
-            RabbitMqOrchestrationProvider orchestrationProvider,
-            IPersistenceProvider persistenceProvider,
-            int parallelExecutorThreads) {
-        super(scanJob, rabbitMqAckTag, orchestrationProvider, persistenceProvider);
-        this.parallelExecutor =
-                new ParallelExecutor(
-                        parallelExecutorThreads, scanJob.getScanConfig().getReexecutions());
+            DeliveryTag deliveryTag,
+            IOrchestrationProvider orchestrationProvider,
+            ScanResultWriter resultWriter,
+            SharedProbeExecutor probeExecutor) {
+        super(scanJob, deliveryTag, orchestrationProvider, resultWriter);
+        this.probeExecutor = probeExecutor;
     }
 
     @Override
     public void run() {
+        parallelExecutor =
+                new ParallelExecutor(
+                        probeExecutor.getSharePerScan(),
+                        scanJob.getScanConfig().getReexecutions(),
+                        probeExecutor.lease());
+        if (cancelled.get()) {
+            // cancelled before it started, cancel() may not have seen the executor
+            parallelExecutor.shutdown();
+            return;
+        }
+        // the scan job is completed by the result writer then
+        boolean resultPending = false;
         try {
             GeneralDelegate generalDelegate = new GeneralDelegate();
             generalDelegate.setQuiet(true);
@@ -78,24 +95,25 @@ public class TlsScan extends Scan {
                     report.getServerIsAlive());
             if (!cancelled.get()
                     && (report.getServerIsAlive() == null || report.getServerIsAlive())) {
-                persistenceProvider.insertScanResult(
-                        new ScanResult(
-                                scanJob.getBulkScanId(),
-                                scanJob.getScanTarget(),
-                                this.createDocumentFromSiteReport(report)),
-                        scanJob.getDbName(),
-                        scanJob.getCollectionName());
-                scanJob.setStatus(Status.DoneResultWritten);
+                resultPending =
+                        writeResult(
+                                this.createDocumentFromSiteReport(report),
+                                Status.DoneResultWritten);
             } else {
                 scanJob.setStatus(Status.DoneNoResult);
             }
         } catch (Throwable e) {
+            scanJob.setStatus(Status.Error);
             LOGGER.error(
                     "Scanning of {} had to be aborted because of an exception: ",
                     scanJob.getScanTarget(),
                     e);
         } finally {
-            this.cancel(false);
+            if (resultPending) {
+                parallelExecutor.shutdown();
+            } else {
+                this.cancel(false);
+            }
         }
     }
 
@@ -105,18 +123,29 @@ public class TlsScan extends Scan {
             if (timeout) {
                 scanJob.setStatus(Status.Timeout);
             }
-            if (scanJob.isMonitored()) {
-                orchestrationProvider.notifyOfDoneScanJob(scanJob);
+            complete();
+            // only releases the lease, the probe threads are shared with other scans
+            ParallelExecutor executor = this.parallelExecutor;
+            if (executor != null) {
+                executor.shutdown();
             }
-            orchestrationProvider.sendAck(rabbitMqAckTag);
-            this.parallelExecutor.shutdown();
         }
     }
 
+    /**
+     * @param connectRtt time in ms it took to establish a TCP connection to the target
+     */
+    public void setConnectRtt(long connectRtt) {
+        this.connectRtt = connectRtt;
+    }
+
     private Document createDocumentFromSiteReport(ServerReport report) {
         Document document = new Document();
         LOGGER.info("Writing report {}", report);
         document.put("report", report);
+        if (connectRtt >= 0) {
+            document.put("connectRtt", connectRtt);
+        }
         LOGGER.info("Created Document {}", document);
         return document;
     }
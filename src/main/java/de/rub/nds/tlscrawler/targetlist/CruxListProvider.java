@@ -9,8 +9,6 @@
 package de.rub.nds.tlscrawler.targetlist;
 
 import de.rub.nds.tlscrawler.constant.CruxListNumber;
-import java.util.List;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -29,7 +27,7 @@ public class CruxListProvider extends ZipFileProvider {
     }
 
     @Override
-    protected List<String> getTargetListFromLines(Stream<String> lines) {
+    protected Stream<String> getTargetsFromLines(Stream<String> lines) {
         // Line format is <protocol>://<domain>, <crux rank>
         // filter...
         return
@@ -38,7 +36,6 @@ public class CruxListProvider extends ZipFileProvider {
                 // ... limit to names with correct crux rank
                 .filter(line -> Integer.parseInt(line.split(",")[1]) <= number)
                 // ... ignore crux rank and protocol
-                .map(line -> line.split(",")[0].split("://")[1])
-                .collect(Collectors.toList());
+                .map(line -> line.split(",")[0].split("://")[1]);
     }
 }
@@ -9,8 +9,22 @@
 package de.rub.nds.tlscrawler.targetlist;
 
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public interface ITargetListProvider {
 
-    List<String> getTargetList();
+    /**
+     * Reads the targets lazily, so large target lists are never held in memory at once. The stream
+     * has to be closed after use.
+     *
+     * @return stream of target strings
+     */
+    Stream<String> getTargetStream();
+
+    default List<String> getTargetList() {
+        try (Stream<String> targets = getTargetStream()) {
+            return targets.collect(Collectors.toList());
+        }
+    }
 }
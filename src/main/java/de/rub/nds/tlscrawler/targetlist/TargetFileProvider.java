@@ -11,8 +11,6 @@ package de.rub.nds.tlscrawler.targetlist;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.List;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -28,15 +26,12 @@ public class TargetFileProvider implements ITargetListProvider {
     }
 
     @Override
-    public List<String> getTargetList() {
+    public Stream<String> getTargetStream() {
         LOGGER.info("Reading hostName list");
-        List<String> targetList;
-        try (Stream<String> lines = Files.lines(Paths.get(filename))) {
-            targetList = lines.collect(Collectors.toList());
+        try {
+            return Files.lines(Paths.get(filename));
         } catch (IOException ex) {
             throw new RuntimeException("Could not load " + filename, ex);
         }
-        LOGGER.info("Read " + targetList.size() + " hosts");
-        return targetList;
     }
 }
@@ -10,7 +10,7 @@ package de.rub.nds.tlscrawler.targetlist;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
@@ -34,32 +34,37 @@ public class TrancoEmailListProvider implements ITargetListProvider {
     }
 
     @Override
-    public List<String> getTargetList() {
-        List<String> dnsList = new ArrayList<>();
+    public Stream<String> getTargetStream() {
+        InitialDirContext iDirC;
         try {
-            InitialDirContext iDirC = new InitialDirContext();
-            List<String> hostList = new ArrayList<>(this.trancoList.getTargetList());
-            LOGGER.info("Fetching MX Hosts");
-            for (String hold : hostList) {
-                String hostname = hold.substring(hold.lastIndexOf(',') + 1);
-                try {
-                    Attributes attributes =
-                            iDirC.getAttributes("dns:/" + hostname, new String[] {"MX"});
-                    Attribute attributeMX = attributes.get("MX");
+            iDirC = new InitialDirContext();
+        } catch (NamingException e) {
+            LOGGER.error(e);
+            return Stream.empty();
+        }
+        LOGGER.info("Fetching MX Hosts");
+        // only the distinct mail servers are remembered, not the hosts of the tranco list
+        return this.trancoList
+                .getTargetStream()
+                .flatMap(hold -> getMxHosts(iDirC, hold.substring(hold.lastIndexOf(',') + 1)))
+                .distinct();
+    }
 
-                    if (attributeMX != null) {
-                        for (int i = 0; i < attributeMX.size(); i++) {
-                            String getMX = attributeMX.get(i).toString();
-                            dnsList.add(getMX.substring(getMX.lastIndexOf(' ') + 1));
-                        }
-                    }
-                } catch (NamingException e) {
-                    LOGGER.error("No MX record found for host: {} with error {}", hostname, e);
+    private static Stream<String> getMxHosts(InitialDirContext iDirC, String hostname) {
+        List<String> mxHosts = new ArrayList<>();
+        try {
+            Attributes attributes = iDirC.getAttributes("dns:/" + hostname, new String[] {"MX"});
+            Attribute attributeMX = attributes.get("MX");
+
+            if (attributeMX != null) {
+                for (int i = 0; i < attributeMX.size(); i++) {
+                    String getMX = attributeMX.get(i).toString();
+                    mxHosts.add(getMX.substring(getMX.lastIndexOf(' ') + 1));
                 }
             }
         } catch (NamingException e) {
-            LOGGER.error(e);
+            LOGGER.error("No MX record found for host: {} with error {}", hostname, e);
         }
-        return dnsList.stream().distinct().collect(Collectors.toList());
+        return mxHosts.stream();
     }
 }
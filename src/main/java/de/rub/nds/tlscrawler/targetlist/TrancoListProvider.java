@@ -8,8 +8,6 @@
  */
 package de.rub.nds.tlscrawler.targetlist;
 
-import java.util.List;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -27,7 +25,7 @@ public class TrancoListProvider extends ZipFileProvider {
     }
 
     @Override
-    protected List<String> getTargetListFromLines(Stream<String> lines) {
-        return lines.limit(this.number).collect(Collectors.toList());
+    protected Stream<String> getTargetsFromLines(Stream<String> lines) {
+        return lines.limit(this.number);
     }
 }
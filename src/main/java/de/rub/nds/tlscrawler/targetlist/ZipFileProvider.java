@@ -15,7 +15,6 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 import java.util.stream.Stream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
@@ -41,8 +40,12 @@ public abstract class ZipFileProvider implements ITargetListProvider {
         this.listName = listName;
     }
 
-    public List<String> getTargetList() {
-        List<String> targetList;
+    /**
+     * Downloads and unzips the list, then reads it lazily. The files are deleted once the stream is
+     * closed.
+     */
+    @Override
+    public Stream<String> getTargetStream() {
         try {
             ReadableByteChannel readableByteChannel =
                     Channels.newChannel(new URL(sourceUrl).openStream());
@@ -72,11 +75,17 @@ public abstract class ZipFileProvider implements ITargetListProvider {
         LOGGER.info("Reading first {} hosts from current " + listName + " list...", number);
         // currently hosts are in order. e.g. top 1000 hosts come first but that does not have to be
         // the case. Therefore, we parse every line until we hit the specified number of hosts
-        try (Stream<String> lines = Files.lines(Paths.get(outputFile))) {
-            targetList = getTargetListFromLines(lines);
+        Stream<String> lines;
+        try {
+            lines = Files.lines(Paths.get(outputFile));
         } catch (IOException ex) {
+            deleteFiles();
             throw new RuntimeException("Could not load " + outputFile, ex);
         }
+        return getTargetsFromLines(lines).onClose(this::deleteFiles);
+    }
+
+    private void deleteFiles() {
         LOGGER.info("Deleting files...");
         try {
             Files.delete(Path.of(zipFilename));
@@ -88,7 +97,6 @@ public abstract class ZipFileProvider implements ITargetListProvider {
         } catch (IOException e) {
             LOGGER.error("Could not delete " + outputFile + ": ", e);
         }
-        return targetList;
     }
 
     private InflaterInputStream getZipInputStream(String filename) throws IOException {
@@ -99,5 +107,9 @@ public abstract class ZipFileProvider implements ITargetListProvider {
         }
     }
 
-    protected abstract List<String> getTargetListFromLines(Stream<String> lines);
+    /**
+     * @param lines of the unzipped list
+     * @return the targets of the lines, must be lazy so the list is never held in memory
+     */
+    protected abstract Stream<String> getTargetsFromLines(Stream<String> lines);
 }
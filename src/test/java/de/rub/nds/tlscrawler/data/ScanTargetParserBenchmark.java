@@ -0,0 +1,120 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.validator.routines.InetAddressValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link ScanTarget#parseTargetString(String, int)} with the split based parsing that
+ * fromTargetString did before, on one million lines shaped like a Tranco list ("rank,domain"). The
+ * old parser is copied below without the hostname lookup, which dominated its run time and is now
+ * done asynchronously.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScanTargetParserBenchmark {
+
+    private static final int LINES = 1_000_000;
+
+    private static final String[] TLDS = {"com", "net", "org", "de", "co.uk", "com.br", "io"};
+
+    private List<String> lines;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        lines = new ArrayList<>(LINES);
+        for (int rank = 1; rank <= LINES; rank++) {
+            StringBuilder line = new StringBuilder().append(rank).append(',');
+            if (random.nextInt(4) == 0) {
+                line.append(randomLabel(random)).append('.');
+            }
+            line.append(randomLabel(random)).append('.').append(TLDS[random.nextInt(TLDS.length)]);
+            lines.add(line.toString());
+        }
+    }
+
+    private static String randomLabel(Random random) {
+        char[] label = new char[3 + random.nextInt(12)];
+        for (int i = 0; i < label.length; i++) {
+            label[i] =
+                    i > 0 && i < label.length - 1 && random.nextInt(10) == 0
+                            ? '-'
+                            : (char) ('a' + random.nextInt(26));
+        }
+        return new String(label);
+    }
+
+    @Benchmark
+    public void parseTargetString(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(ScanTarget.parseTargetString(line, 443));
+        }
+    }
+
+    @Benchmark
+    public void splitBasedParser(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(splitParse(line, 443));
+        }
+    }
+
+    /** The parser of fromTargetString before the single pass parser, without the lookup. */
+    private static ScanTarget splitParse(String targetString, int defaultPort) {
+        ScanTarget target = new ScanTarget();
+        if (targetString.contains(",")) {
+            if (targetString.split(",")[0].chars().allMatch(Character::isDigit)) {
+                target.setTrancoRank(Integer.parseInt(targetString.split(",")[0]));
+                targetString = targetString.split(",")[1];
+            } else {
+                targetString = "";
+            }
+        }
+        if (targetString.contains("//")) {
+            targetString = targetString.split("//")[1];
+        }
+        if (targetString.startsWith("\"") && targetString.endsWith("\"")) {
+            targetString = targetString.replace("\"", "");
+        }
+        if (targetString.contains(":")) {
+            int port = Integer.parseInt(targetString.split(":")[1]);
+            targetString = targetString.split(":")[0];
+            if (port > 1 && port < 65535) {
+                target.setPort(port);
+            }
+        } else {
+            target.setPort(defaultPort);
+        }
+        if (InetAddressValidator.getInstance().isValid(targetString)) {
+            target.setIp(targetString);
+        } else {
+            target.setHostname(targetString);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class ScanTargetTest {
+
+    private static ScanTarget parse(String targetString) {
+        return ScanTarget.parseTargetString(targetString, 443);
+    }
+
+    @Test
+    public void testParseTrancoLine() {
+        ScanTarget target = parse("42,www.example-site.co.uk");
+        assertNotNull(target);
+        assertEquals(42, target.getTrancoRank());
+        assertEquals("www.example-site.co.uk", target.getHostname());
+        assertNull(target.getIp());
+        assertEquals(443, target.getPort());
+    }
+
+    @Test
+    public void testParseFormats() {
+        assertEquals("mail.example.com", parse("smtp://mail.example.com").getHostname());
+        assertEquals("example.com", parse("\"example.com\"").getHostname());
+        assertEquals(8443, parse("example.com:8443").getPort());
+        assertEquals("_dmarc.example.com", parse("_dmarc.example.com").getHostname());
+        assertEquals("bücher.de", parse("bücher.de").getHostname());
+        assertEquals("example.com.", parse("example.com.").getHostname());
+
+        ScanTarget ipv4 = parse("192.0.2.1:8080");
+        assertEquals("192.0.2.1", ipv4.getIp());
+        assertEquals(8080, ipv4.getPort());
+        ScanTarget ipv6 = parse("[2001:db8::1]:8443");
+        assertEquals("2001:db8::1", ipv6.getIp());
+        assertEquals(8443, ipv6.getPort());
+        assertEquals("2001:db8::1", parse("2001:db8::1").getIp());
+    }
+
+    @Test
+    public void testRejectInvalidTargets() {
+        for (String targetString :
+                List.of(
+                        "",
+                        "x,example.com",
+                        "example.com:https",
+                        "[example.com]:443",
+                        "[2001:db8::1",
+                        "exa mple.com",
+                        "example..com",
+                        "-example.com",
+                        "example-.com",
+                        "example.com/path",
+                        "<script>.com",
+                        "10.1.1",
+                        "256.1.1.1",
+                        "a".repeat(64) + ".com")) {
+            assertNull(parse(targetString), targetString);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.denylist;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.net.util.SubnetUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a single lookup in an {@link IpRangeSet} built from a denylist of 100k entries: IPv4
+ * subnets of different sizes, single IPv4 addresses and IPv6 subnets. The addresses that are looked
+ * up are random, so most of them are not denylisted. For comparison, the lookup the denylist did
+ * before, a set of single addresses and a scan over all subnets with {@link SubnetUtils}, is
+ * measured on the same entries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IpRangeSetBenchmark {
+
+    private static final int ENTRIES = 100_000;
+
+    private static final int LOOKUP_ADDRESSES = 4096;
+
+    private IpRangeSet ranges;
+
+    private Set<String> singleAddresses;
+
+    private List<SubnetUtils.SubnetInfo> subnets;
+
+    private String[] ipv4Addresses;
+
+    private String[] ipv6Addresses;
+
+    private String[] ipv4MappedAddresses;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        List<String> entries = new ArrayList<>(ENTRIES);
+        singleAddresses = new HashSet<>();
+        subnets = new ArrayList<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            int kind = random.nextInt(10);
+            String entry;
+            if (kind < 5) {
+                entry = randomIpv4(random);
+                singleAddresses.add(entry);
+            } else if (kind < 9) {
+                entry = randomIpv4(random) + "/" + (16 + random.nextInt(15));
+                subnets.add(new SubnetUtils(entry).getInfo());
+            } else {
+                // SubnetUtils does not support IPv6, so these are only in the range set
+                entry = randomIpv6(random) + "/" + (32 + random.nextInt(33));
+            }
+            entries.add(entry);
+        }
+        ranges = new IpRangeSet(entries);
+        ipv4Addresses = new String[LOOKUP_ADDRESSES];
+        ipv6Addresses = new String[LOOKUP_ADDRESSES];
+        ipv4MappedAddresses = new String[LOOKUP_ADDRESSES];
+        for (int i = 0; i < LOOKUP_ADDRESSES; i++) {
+            ipv4Addresses[i] = randomIpv4(random);
+            ipv6Addresses[i] = randomIpv6(random);
+            ipv4MappedAddresses[i] = "::ffff:" + ipv4Addresses[i];
+        }
+    }
+
+    private static String randomIpv4(Random random) {
+        return random.nextInt(256)
+                + "."
+                + random.nextInt(256)
+                + "."
+                + random.nextInt(256)
+                + "."
+                + random.nextInt(256);
+    }
+
+    private static String randomIpv6(Random random) {
+        StringBuilder address = new StringBuilder("2001");
+        for (int i = 0; i < 7; i++) {
+            address.append(':').append(Integer.toHexString(random.nextInt(0x10000)));
+        }
+        return address.toString();
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (LOOKUP_ADDRESSES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean containsIpv4() {
+        return ranges.contains(ipv4Addresses[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean containsIpv6() {
+        return ranges.contains(ipv6Addresses[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean containsIpv4Mapped() {
+        return ranges.contains(ipv4MappedAddresses[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean subnetScanIpv4() {
+        String address = ipv4Addresses[nextIndex()];
+        return singleAddresses.contains(address)
+                || subnets.stream().anyMatch(subnet -> subnet.isInRange(address));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.denylist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class IpRangeSetTest {
+
+    @Test
+    public void testIpv4Ranges() {
+        IpRangeSet ranges = new IpRangeSet(List.of("10.0.0.0/8", "192.0.2.7", "10.1.0.0/16"));
+        assertEquals(2, ranges.size());
+        assertTrue(ranges.contains("10.0.0.0"));
+        assertTrue(ranges.contains("10.255.255.255"));
+        assertTrue(ranges.contains("192.0.2.7"));
+        assertFalse(ranges.contains("192.0.2.8"));
+        assertFalse(ranges.contains("11.0.0.0"));
+        assertFalse(ranges.contains("10.0.0"));
+        assertFalse(ranges.contains(null));
+    }
+
+    @Test
+    public void testIpv6Ranges() {
+        IpRangeSet ranges = new IpRangeSet(List.of("2001:db8::/32", "2001:db9::1/128"));
+        assertTrue(ranges.contains("2001:db8:ffff::1"));
+        assertTrue(ranges.contains("2001:db9::1"));
+        assertFalse(ranges.contains("2001:db9::2"));
+        assertFalse(ranges.contains("10.0.0.1"));
+    }
+
+    @Test
+    public void testIpv4MappedAddressesWithoutIpv6Ranges() {
+        IpRangeSet ranges = new IpRangeSet(List.of("192.0.2.0/24"));
+        assertTrue(ranges.contains("::ffff:192.0.2.1"));
+        assertTrue(ranges.contains("::ffff:c000:201"));
+        assertFalse(ranges.contains("::ffff:198.51.100.1"));
+        assertFalse(ranges.contains("2001:db8::1"));
+    }
+
+    @Test
+    public void testInvalidEntriesAreSkipped() {
+        IpRangeSet ranges =
+                new IpRangeSet(List.of("10.0.0.0/33", "example.com", "2001:db8::/129", "1.2.3.4"));
+        assertEquals(1, ranges.size());
+        assertTrue(ranges.contains("1.2.3.4"));
+    }
+}
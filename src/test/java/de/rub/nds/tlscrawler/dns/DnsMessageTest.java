@@ -0,0 +1,147 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.dns;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class DnsMessageTest {
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(512);
+
+    @Test
+    public void testEncodeQuery() {
+        DnsMessage.encodeQuery(buffer, 0xBEEF, "www.example.com", DnsMessage.TYPE_AAAA);
+        byte[] query = new byte[buffer.remaining()];
+        buffer.get(query);
+
+        StubNameServer.Query decoded = StubNameServer.Query.decode(ByteBuffer.wrap(query));
+        assertEquals(0xBEEF, decoded.getId());
+        assertEquals("www.example.com", decoded.getName());
+        assertEquals(DnsMessage.TYPE_AAAA, decoded.getType());
+        // recursion desired, a single question and no records
+        assertArrayEquals(
+                new byte[] {0x01, 0x00, 0, 1, 0, 0, 0, 0, 0, 0}, Arrays.copyOfRange(query, 2, 12));
+        // class IN follows the type
+        assertArrayEquals(
+                new byte[] {0, 1}, Arrays.copyOfRange(query, query.length - 2, query.length));
+    }
+
+    @Test
+    public void testEncodeQueryRejectsInvalidNames() {
+        for (String name :
+                List.of("", "a..b", ".example.com", "a".repeat(64) + ".com", "bücher.de")) {
+            assertThrows(
+                    IllegalArgumentException.class,
+                    () -> DnsMessage.encodeQuery(buffer, 1, name, DnsMessage.TYPE_A),
+                    name);
+        }
+    }
+
+    @Test
+    public void testDecodeAddress() throws IOException {
+        byte[] response =
+                new StubNameServer.Response(42, "example.com", DnsMessage.TYPE_A)
+                        .address("example.com", 300, "93.184.216.34")
+                        .address("example.com", 120, "93.184.216.35")
+                        .build();
+
+        DnsMessage.Response decoded = DnsMessage.decodeResponse(ByteBuffer.wrap(response));
+        assertNotNull(decoded);
+        assertEquals(42, decoded.getId());
+        assertEquals("example.com", decoded.getName());
+        assertEquals(DnsMessage.TYPE_A, decoded.getType());
+        assertEquals(DnsMessage.RCODE_NO_ERROR, decoded.getRcode());
+        assertFalse(decoded.isTruncated());
+        assertEquals(List.of("93.184.216.34", "93.184.216.35"), decoded.getAddresses());
+        assertEquals(120, decoded.getTtl());
+    }
+
+    @Test
+    public void testDecodeCnameChainUsesLowestTtl() throws IOException {
+        byte[] response =
+                new StubNameServer.Response(7, "www.example.com", DnsMessage.TYPE_AAAA)
+                        .cname("www.example.com", 30, "cdn.example.net")
+                        .address("cdn.example.net", 600, "2001:db8::1")
+                        .build();
+
+        DnsMessage.Response decoded = DnsMessage.decodeResponse(ByteBuffer.wrap(response));
+        assertNotNull(decoded);
+        assertEquals(List.of("2001:db8:0:0:0:0:0:1"), decoded.getAddresses());
+        assertEquals(30, decoded.getTtl());
+    }
+
+    @Test
+    public void testDecodeNameErrorWithSoa() throws IOException {
+        byte[] response =
+                new StubNameServer.Response(9, "missing.example.com", DnsMessage.TYPE_A)
+                        .rcode(DnsMessage.RCODE_NAME_ERROR)
+                        .soa("example.com", 900, 60)
+                        .build();
+
+        DnsMessage.Response decoded = DnsMessage.decodeResponse(ByteBuffer.wrap(response));
+        assertNotNull(decoded);
+        assertEquals(DnsMessage.RCODE_NAME_ERROR, decoded.getRcode());
+        assertTrue(decoded.getAddresses().isEmpty());
+        assertEquals(-1, decoded.getTtl());
+        assertEquals(60, decoded.getNegativeTtl());
+    }
+
+    @Test
+    public void testDecodeCompressedName() {
+        ByteBuffer response = ByteBuffer.allocate(64);
+        response.putShort((short) 1).putShort((short) 0x8180);
+        response.putShort((short) 1).putShort((short) 1).putShort((short) 0).putShort((short) 0);
+        response.put(StubNameServer.Response.encodeName("example.com"));
+        response.putShort((short) DnsMessage.TYPE_A).putShort((short) 1);
+        // the owner name of the answer points to the question name at offset 12
+        response.putShort((short) 0xC00C);
+        response.putShort((short) DnsMessage.TYPE_A).putShort((short) 1).putInt(60);
+        response.putShort((short) 4).put(new byte[] {10, 0, 0, 1});
+        response.flip();
+
+        DnsMessage.Response decoded = DnsMessage.decodeResponse(response);
+        assertNotNull(decoded);
+        assertEquals(List.of("10.0.0.1"), decoded.getAddresses());
+        assertEquals(60, decoded.getTtl());
+    }
+
+    @Test
+    public void testDecodeRejectsInvalidDatagrams() throws IOException {
+        // a query instead of a response
+        DnsMessage.encodeQuery(buffer, 1, "example.com", DnsMessage.TYPE_A);
+        assertNull(DnsMessage.decodeResponse(buffer));
+
+        byte[] response =
+                new StubNameServer.Response(1, "example.com", DnsMessage.TYPE_A)
+                        .address("example.com", 60, "10.0.0.1")
+                        .build();
+        assertNull(DnsMessage.decodeResponse(ByteBuffer.wrap(response, 0, response.length - 2)));
+        assertNull(DnsMessage.decodeResponse(ByteBuffer.wrap(response, 0, 8)));
+
+        // a name that points to itself
+        ByteBuffer loop = ByteBuffer.allocate(32);
+        loop.putShort((short) 1).putShort((short) 0x8180);
+        loop.putShort((short) 1).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        loop.putShort((short) 0xC00C).putShort((short) DnsMessage.TYPE_A).putShort((short) 1);
+        loop.flip();
+        assertNull(DnsMessage.decodeResponse(loop));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/** Resolves names against a {@link StubNameServer} on the loopback interface. */
+public class DnsResolverTest {
+
+    private static final long TIMEOUT_MS = 200;
+
+    private static String resolve(DnsResolver resolver, String hostname) throws Exception {
+        return resolver.resolve(hostname).get(5, TimeUnit.SECONDS);
+    }
+
+    private static void assertUnknownHost(DnsResolver resolver, String hostname) {
+        ExecutionException e =
+                assertThrows(
+                        ExecutionException.class,
+                        () -> resolver.resolve(hostname).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(UnknownHostException.class, e.getCause());
+    }
+
+    @Test
+    public void testResolveAndCache() throws Exception {
+        try (StubNameServer server =
+                        new StubNameServer(
+                                query ->
+                                        List.of(
+                                                StubNameServer.Response.to(query)
+                                                        .address(query.getName(), 300, "10.0.0.1")
+                                                        .build()));
+                DnsResolver resolver = new DnsResolver(server.getAddress(), 16, TIMEOUT_MS)) {
+            assertEquals("10.0.0.1", resolve(resolver, "Example.COM."));
+            assertEquals("10.0.0.1", resolve(resolver, "example.com"));
+
+            assertEquals(1, server.getQueries().size());
+            assertEquals("example.com", server.getQueries().get(0).getName());
+            assertEquals(DnsMessage.TYPE_A, server.getQueries().get(0).getType());
+            assertEquals(1, resolver.getResolvedNames());
+            assertEquals(1, resolver.getCacheHits());
+        }
+    }
+
+    @Test
+    public void testFallBackToAaaa() throws Exception {
+        try (StubNameServer server =
+                        new StubNameServer(
+                                query ->
+                                        List.of(
+                                                query.getType() == DnsMessage.TYPE_A
+                                                        ? StubNameServer.Response.to(query).build()
+                                                        : StubNameServer.Response.to(query)
+                                                                .address(
+                                                                        query.getName(),
+                                                                        300,
+                                                                        "2001:db8::1")
+                                                                .build()));
+                DnsResolver resolver = new DnsResolver(server.getAddress(), 16, TIMEOUT_MS)) {
+            assertEquals("2001:db8:0:0:0:0:0:1", resolve(resolver, "v6only.example.com"));
+            assertEquals(2, server.getQueries().size());
+            assertEquals(DnsMessage.TYPE_AAAA, server.getQueries().get(1).getType());
+        }
+    }
+
+    @Test
+    public void testNameErrorIsCached() throws Exception {
+        try (StubNameServer server =
+                        new StubNameServer(
+                                query ->
+                                        List.of(
+                                                StubNameServer.Response.to(query)
+                                                        .rcode(DnsMessage.RCODE_NAME_ERROR)
+                                                        .soa("example.com", 900, 60)
+                                                        .build()));
+                DnsResolver resolver = new DnsResolver(server.getAddress(), 16, TIMEOUT_MS)) {
+            assertUnknownHost(resolver, "missing.example.com");
+            assertUnknownHost(resolver, "missing.example.com");
+
+            assertEquals(1, server.getQueries().size());
+            assertEquals(1, resolver.getFailedNames());
+            assertEquals(1, resolver.getCacheHits());
+        }
+    }
+
+    @Test
+    public void testIgnoreResponsesToOtherQuestions() throws Exception {
+        try (StubNameServer server =
+                        new StubNameServer(
+                                query ->
+                                        // spoofed responses with the right id come first
+                                        List.of(
+                                                new StubNameServer.Response(
+                                                                query.getId(),
+                                                                "attacker.example.net",
+                                                                query.getType())
+                                                        .address(
+                                                                "attacker.example.net",
+                                                                300,
+                                                                "192.0.2.66")
+                                                        .build(),
+                                                new StubNameServer.Response(
+                                                                query.getId(),
+                                                                query.getName(),
+                                                                DnsMessage.TYPE_AAAA)
+                                                        .address(
+                                                                query.getName(),
+                                                                300,
+                                                                "2001:db8::66")
+                                                        .build(),
+                                                StubNameServer.Response.to(query)
+                                                        .address(query.getName(), 300, "10.0.0.1")
+                                                        .build()));
+                DnsResolver resolver = new DnsResolver(server.getAddress(), 16, TIMEOUT_MS)) {
+            assertEquals("10.0.0.1", resolve(resolver, "example.com"));
+        }
+    }
+
+    @Test
+    public void testUnansweredQueryIsRetriedAndFails() throws Exception {
+        try (StubNameServer server = new StubNameServer(query -> List.of());
+                DnsResolver resolver = new DnsResolver(server.getAddress(), 16, TIMEOUT_MS)) {
+            assertUnknownHost(resolver, "silent.example.com");
+
+            List<StubNameServer.Query> queries = server.getQueries();
+            assertEquals(3, queries.size());
+            Set<Integer> ids = new HashSet<>();
+            for (StubNameServer.Query query : queries) {
+                assertEquals("silent.example.com", query.getName());
+                ids.add(query.getId());
+            }
+            // each retry is sent with a new random id, a collision is unlikely but possible
+            assertTrue(ids.size() >= 2);
+        }
+    }
+
+    @Test
+    public void testManyQueriesInFlight() throws Exception {
+        try (StubNameServer server =
+                        new StubNameServer(
+                                query -> {
+                                    String number = query.getName().split("\\.")[0];
+                                    return List.of(
+                                            StubNameServer.Response.to(query)
+                                                    .address(
+                                                            query.getName(),
+                                                            300,
+                                                            "10.0.0." + number)
+                                                    .build());
+                                });
+                DnsResolver resolver = new DnsResolver(server.getAddress(), 8, TIMEOUT_MS)) {
+            List<CompletableFuture<String>> lookups = new ArrayList<>();
+            for (int i = 1; i <= 200; i++) {
+                lookups.add(resolver.resolve(i + ".example.com"));
+            }
+            for (int i = 1; i <= 200; i++) {
+                assertEquals("10.0.0." + i, lookups.get(i - 1).get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(200, resolver.getResolvedNames());
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.dns;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Name server on the loopback interface that answers each query with the datagrams returned by a
+ * responder. Received queries are recorded, so tests can check what the resolver sent.
+ */
+class StubNameServer implements AutoCloseable {
+
+    private final DatagramSocket socket;
+
+    private final Responder responder;
+
+    private final List<Query> queries = new CopyOnWriteArrayList<>();
+
+    private final Thread thread;
+
+    StubNameServer(Responder responder) throws SocketException {
+        this.responder = responder;
+        this.socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        this.thread = new Thread(this::serve, "stub-name-server");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    InetSocketAddress getAddress() {
+        return (InetSocketAddress) socket.getLocalSocketAddress();
+    }
+
+    List<Query> getQueries() {
+        return queries;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        socket.close();
+        thread.join();
+    }
+
+    private void serve() {
+        byte[] buffer = new byte[512];
+        while (!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                Query query = Query.decode(ByteBuffer.wrap(buffer, 0, packet.getLength()));
+                queries.add(query);
+                for (byte[] response : responder.respond(query)) {
+                    socket.send(
+                            new DatagramPacket(
+                                    response, response.length, packet.getSocketAddress()));
+                }
+            } catch (IOException e) {
+                // the socket was closed or the response could not be built
+            }
+        }
+    }
+
+    /** Creates the datagrams that are sent in response to a query, in this order. */
+    @FunctionalInterface
+    interface Responder {
+        List<byte[]> respond(Query query) throws IOException;
+    }
+
+    /** A received query. */
+    static final class Query {
+
+        private final int id;
+
+        private final String name;
+
+        private final int type;
+
+        Query(int id, String name, int type) {
+            this.id = id;
+            this.name = name;
+            this.type = type;
+        }
+
+        static Query decode(ByteBuffer buffer) {
+            int id = buffer.getShort() & 0xFFFF;
+            buffer.position(12);
+            StringBuilder name = new StringBuilder();
+            int length;
+            while ((length = buffer.get()) != 0) {
+                if (name.length() > 0) {
+                    name.append('.');
+                }
+                byte[] label = new byte[length];
+                buffer.get(label);
+                name.append(new String(label, StandardCharsets.US_ASCII));
+            }
+            return new Query(id, name.toString(), buffer.getShort() & 0xFFFF);
+        }
+
+        int getId() {
+            return id;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getType() {
+            return type;
+        }
+    }
+
+    /** Builds a response to a single question, names of records are written uncompressed. */
+    static final class Response {
+
+        private static final int TYPE_CNAME = 5;
+
+        private static final int TYPE_SOA = 6;
+
+        private final int id;
+
+        private final String name;
+
+        private final int type;
+
+        private int rcode;
+
+        private int answerCount;
+
+        private int authorityCount;
+
+        private final ByteArrayOutputStream answers = new ByteArrayOutputStream();
+
+        private final ByteArrayOutputStream authorities = new ByteArrayOutputStream();
+
+        Response(int id, String name, int type) {
+            this.id = id;
+            this.name = name;
+            this.type = type;
+        }
+
+        /**
+         * @return a response to the query, with the id, name and type of its question
+         */
+        static Response to(Query query) {
+            return new Response(query.getId(), query.getName(), query.getType());
+        }
+
+        Response rcode(int rcode) {
+            this.rcode = rcode;
+            return this;
+        }
+
+        /** Adds an A or AAAA record. */
+        Response address(String owner, long ttl, String address) throws IOException {
+            byte[] data = InetAddress.getByName(address).getAddress();
+            int recordType = data.length == 4 ? DnsMessage.TYPE_A : DnsMessage.TYPE_AAAA;
+            writeRecord(answers, owner, recordType, ttl, data);
+            answerCount++;
+            return this;
+        }
+
+        Response cname(String owner, long ttl, String canonicalName) throws IOException {
+            writeRecord(answers, owner, TYPE_CNAME, ttl, encodeName(canonicalName));
+            answerCount++;
+            return this;
+        }
+
+        /** Adds the SOA record of the zone to the authority section. */
+        Response soa(String zone, long ttl, long minimum) throws IOException {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            data.write(encodeName("ns." + zone));
+            data.write(encodeName("hostmaster." + zone));
+            ByteBuffer numbers = ByteBuffer.allocate(20);
+            numbers.putInt(1).putInt(7200).putInt(900).putInt(1209600).putInt((int) minimum);
+            data.write(numbers.array());
+            writeRecord(authorities, zone, TYPE_SOA, ttl, data.toByteArray());
+            authorityCount++;
+            return this;
+        }
+
+        byte[] build() throws IOException {
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            ByteBuffer header = ByteBuffer.allocate(12);
+            header.putShort((short) id);
+            header.putShort((short) (0x8180 | rcode));
+            header.putShort((short) 1);
+            header.putShort((short) answerCount);
+            header.putShort((short) authorityCount);
+            header.putShort((short) 0);
+            message.write(header.array());
+            message.write(encodeName(name));
+            message.write(
+                    ByteBuffer.allocate(4).putShort((short) type).putShort((short) 1).array());
+            answers.writeTo(message);
+            authorities.writeTo(message);
+            return message.toByteArray();
+        }
+
+        private static void writeRecord(
+                ByteArrayOutputStream section, String owner, int type, long ttl, byte[] data)
+                throws IOException {
+            section.write(encodeName(owner));
+            ByteBuffer fields = ByteBuffer.allocate(10);
+            fields.putShort((short) type).putShort((short) 1).putInt((int) ttl);
+            fields.putShort((short) data.length);
+            section.write(fields.array());
+            section.write(data);
+        }
+
+        static byte[] encodeName(String name) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            for (String label : name.split("\\.")) {
+                byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+                encoded.write(bytes.length);
+                encoded.write(bytes, 0, bytes.length);
+            }
+            encoded.write(0);
+            return encoded.toByteArray();
+        }
+    }
+}
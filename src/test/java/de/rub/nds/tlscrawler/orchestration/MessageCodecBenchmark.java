@@ -0,0 +1,96 @@
+/*
+ * TLS-Crawler - A TLS scanning tool to perform large scale scans with the TLS-Scanner
+ *
+ * Copyright 2018-2023 Ruhr University Bochum, Paderborn University, and Hackmanit GmbH
+ *
+ * Licensed under Apache License, Version 2.0
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+package de.rub.nds.tlscrawler.orchestration;
+
+import de.rub.nds.scanner.core.constants.ScannerDetail;
+import de.rub.nds.tlsattacker.core.constants.StarttlsType;
+import de.rub.nds.tlscrawler.constant.Status;
+import de.rub.nds.tlscrawler.data.ScanConfig;
+import de.rub.nds.tlscrawler.data.ScanJob;
+import de.rub.nds.tlscrawler.data.ScanTarget;
+import de.rub.nds.tlscrawler.scans.ScanType;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.SerializationUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link MessageCodec} with java serialization, the encoding of scan jobs before the
+ * codec was introduced. The size of an encoded scan job is printed once per fork, as it does not
+ * vary between invocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageCodecBenchmark {
+
+    private ScanJob scanJob;
+
+    private byte[] encoded;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() {
+        ScanTarget scanTarget = new ScanTarget();
+        scanTarget.setHostname("www.example-cdn-hostname.com");
+        scanTarget.setIp("93.184.216.34");
+        scanTarget.setPort(443);
+        scanTarget.setTrancoRank(123456);
+        // scan jobs sent with java serialization carry their scan config
+        ScanConfig scanConfig =
+                new ScanConfig(ScanType.TLS, 443, ScannerDetail.NORMAL, 3, 2000, StarttlsType.NONE);
+        scanJob =
+                new ScanJob(
+                        scanTarget,
+                        scanConfig,
+                        "6512f3c2a4b1e93d7c0f5a21",
+                        true,
+                        "crawler",
+                        "tranco-2023-09-26",
+                        Status.Ready);
+        encoded = MessageCodec.encodeScanJob(scanJob);
+        serialized = SerializationUtils.serialize(scanJob);
+        System.out.printf(
+                "%nBytes per scan job: codec %d, java serialization %d%n",
+                encoded.length, serialized.length);
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() {
+        return MessageCodec.encodeScanJob(scanJob);
+    }
+
+    @Benchmark
+    public byte[] encodeJavaSerialization() {
+        return SerializationUtils.serialize(scanJob);
+    }
+
+    @Benchmark
+    public ScanJob decodeCodec() throws IOException {
+        return MessageCodec.decodeScanJob(encoded);
+    }
+
+    @Benchmark
+    public ScanJob decodeJavaSerialization() {
+        return SerializationUtils.deserialize(serialized);
+    }
+}